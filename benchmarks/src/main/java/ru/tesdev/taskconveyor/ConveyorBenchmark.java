@@ -0,0 +1,151 @@
+package ru.tesdev.taskconveyor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.WorkerMode;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// End to end through a real conveyor: insert, claim, dispatch, execute, complete.
+// Needs a PostgreSQL the benchmark may create the taskconveyor schema in:
+//   -Dtc.bench.url=jdbc:postgresql://localhost:5432/postgres -Dtc.bench.user=postgres -Dtc.bench.password=
+// VIRTUAL only runs on Java 21+, exclude it elsewhere with -p workerMode=FIXED,CACHED
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConveyorBenchmark {
+    private static final String HANDLER = "jmh";
+    private static final String TYPE = "bench";
+    private static final int BATCH = 1000;
+    private static final long WAIT_SECONDS = 60;
+
+    @Param({"FIXED", "CACHED", "VIRTUAL"})
+    public WorkerMode workerMode;
+
+    // noop measures the conveyor itself, sleep stands in for an executor waiting on I/O
+    @Param({"noop", "sleep"})
+    public String work;
+
+    private final Semaphore completed = new Semaphore(0);
+    private DatabaseConfig config;
+    private TaskConveyor conveyor;
+    private Connection producer;
+    private PreparedStatement insertBatch;
+    private PreparedStatement insertOne;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if (workerMode == WorkerMode.VIRTUAL && !TaskThreadFactory.isVirtualThreadsSupported()) {
+            throw new IllegalStateException("VIRTUAL worker mode needs Java 21 or newer");
+        }
+        config = new DatabaseConfig(
+                System.getProperty("tc.bench.url", "jdbc:postgresql://localhost:5432/postgres"),
+                System.getProperty("tc.bench.user", "postgres"),
+                System.getProperty("tc.bench.password", ""));
+        TaskConveyor.Builder builder = TaskConveyor.builder(HANDLER, config)
+                .workerMode(workerMode)
+                .autoDone(true)
+                .pushMode(true);
+        if (workerMode == WorkerMode.FIXED) {
+            builder.workerThreads(16);
+        }
+        conveyor = builder.build();
+        conveyor.prepareDataBase();
+
+        producer = DriverManager.getConnection(config.getConnectUrl(), config.getUser(), config.getPassword());
+        clear("DELETE FROM taskconveyor.tc_tasks WHERE handler_name = ?");
+        insertBatch = producer.prepareStatement("INSERT INTO taskconveyor.tc_tasks(type, payload, owner, handler_name) "
+                + "SELECT ?, '{\"n\":1}'::json, 'jmh', ? FROM generate_series(1, ?)");
+        insertBatch.setString(1, TYPE);
+        insertBatch.setString(2, HANDLER);
+        insertBatch.setInt(3, BATCH);
+        insertOne = producer.prepareStatement("INSERT INTO taskconveyor.tc_tasks(type, payload, owner, handler_name) "
+                + "VALUES (?, '{\"n\":1}'::json, 'jmh', ?)");
+        insertOne.setString(1, TYPE);
+        insertOne.setString(2, HANDLER);
+
+        boolean sleep = work.equals("sleep");
+        conveyor.registerType(TYPE, (task, logger) -> {
+            if (sleep) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        conveyor.loadEventExecutor(new EventsExecutor() {
+            @Override
+            public void onTaskEnd(Task task, Logger logger) {
+                completed.release();
+            }
+        });
+        conveyor.infinityPolling();
+    }
+
+    // finished rows are dropped between iterations so every iteration claims from the same table size
+    @Setup(Level.Iteration)
+    public void cleanup() throws SQLException {
+        clear("DELETE FROM taskconveyor.tc_tasks WHERE handler_name = ? AND status IN ('done', 'deny')");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conveyor.close();
+        clear("DELETE FROM taskconveyor.tc_tasks WHERE handler_name = ?");
+        producer.close();
+    }
+
+    // tasks per second, inserted in one statement the way a bulk producer would
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() throws Exception {
+        insertBatch.executeUpdate();
+        await(BATCH);
+    }
+
+    // insert-to-completion latency of a single task on an otherwise idle conveyor, reported with percentiles
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void latency() throws Exception {
+        insertOne.executeUpdate();
+        await(1);
+    }
+
+    private void await(int tasks) throws InterruptedException, TimeoutException {
+        if (!completed.tryAcquire(tasks, WAIT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException(String.format("%d tasks did not complete in %d seconds", tasks, WAIT_SECONDS));
+        }
+    }
+
+    private void clear(String sql) throws SQLException {
+        try (PreparedStatement stmt = producer.prepareStatement(sql)) {
+            stmt.setString(1, HANDLER);
+            stmt.executeUpdate();
+        }
+    }
+}
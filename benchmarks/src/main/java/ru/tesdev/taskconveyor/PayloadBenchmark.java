@@ -0,0 +1,117 @@
+package ru.tesdev.taskconveyor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Tree decoding through Task.getPayload() plus hand conversion, against a per-type PayloadCodec
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx1g")
+public class PayloadBenchmark {
+    private static final String SMALL = "{\"userId\":42,\"email\":\"user@example.com\",\"retry\":false}";
+    private static final String ORDER = "{\"orderId\":\"7f1c2a4e-3b5d-4f6a-8c9d-0e1f2a3b4c5d\",\"customer\":\"ACME Ltd\","
+            + "\"currency\":\"EUR\",\"total\":1249.90,\"lines\":["
+            + "{\"sku\":\"A-100\",\"quantity\":2,\"price\":199.95},"
+            + "{\"sku\":\"B-220\",\"quantity\":1,\"price\":650.00},"
+            + "{\"sku\":\"C-310\",\"quantity\":4,\"price\":50.00}]}";
+
+    @Param({"small", "order"})
+    public String payload;
+
+    private String raw;
+    private PayloadCodec<Notification> notificationCodec;
+    private PayloadCodec<Order> orderCodec;
+
+    @Setup
+    public void setup() {
+        raw = payload.equals("small") ? SMALL : ORDER;
+        notificationCodec = PayloadCodec.of(Notification.class);
+        orderCodec = PayloadCodec.of(Order.class);
+    }
+
+    // a fresh task per call, the lazily parsed tree must not be cached between invocations
+    private Task task() {
+        return new Task(1, UUID.randomUUID(), payload, raw, TaskStatus.WORK, 0, "bench", null, false, null);
+    }
+
+    @Benchmark
+    public JsonNode tree() {
+        return task().getPayload();
+    }
+
+    @Benchmark
+    public Object treeToObject() {
+        JsonNode node = task().getPayload();
+        if (payload.equals("small")) {
+            Notification notification = new Notification();
+            notification.userId = node.get("userId").asLong();
+            notification.email = node.get("email").asText();
+            notification.retry = node.get("retry").asBoolean();
+            return notification;
+        }
+        Order order = new Order();
+        order.orderId = node.get("orderId").asText();
+        order.customer = node.get("customer").asText();
+        order.currency = node.get("currency").asText();
+        order.total = node.get("total").asDouble();
+        order.lines = new ArrayList<>();
+        for (JsonNode line : node.get("lines")) {
+            OrderLine orderLine = new OrderLine();
+            orderLine.sku = line.get("sku").asText();
+            orderLine.quantity = line.get("quantity").asInt();
+            orderLine.price = line.get("price").asDouble();
+            order.lines.add(orderLine);
+        }
+        return order;
+    }
+
+    @Benchmark
+    public Object typed() throws TaskPayloadException {
+        return payload.equals("small") ? notificationCodec.decode(raw) : orderCodec.decode(raw);
+    }
+
+    @Benchmark
+    public TaskStatus transformStatus() throws Exception {
+        return TaskConveyor.transformTaskStatus("work");
+    }
+
+    public static class Notification {
+        public long userId;
+        public String email;
+        public boolean retry;
+    }
+
+    public static class Order {
+        public String orderId;
+        public String customer;
+        public String currency;
+        public double total;
+        public List<OrderLine> lines;
+    }
+
+    public static class OrderLine {
+        public String sku;
+        public int quantity;
+        public double price;
+    }
+}
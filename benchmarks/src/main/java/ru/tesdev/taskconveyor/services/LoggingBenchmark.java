@@ -0,0 +1,70 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.tesdev.taskconveyor.journal.TaskJournal;
+import ru.tesdev.taskconveyor.types.LogOverflowPolicy;
+import ru.tesdev.taskconveyor.types.LoggingOptions;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// markTask from several workers at once, the way completions hit the logging service
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@Threads(4)
+public class LoggingBenchmark {
+    @Param({"sync", "async", "journal"})
+    public String mode;
+
+    private Path folder;
+    private LoggingService logging;
+    private final UUID uuid = UUID.randomUUID();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("tc-logging-bench");
+        logging = switch (mode) {
+            case "sync" -> new LoggingService(folder);
+            // BLOCK keeps every event, a full ring shows up as producer latency instead of drops
+            case "async" -> new LoggingService(folder, LoggingOptions.defaults().overflowPolicy(LogOverflowPolicy.BLOCK));
+            case "journal" -> new LoggingService(null, null, new TaskJournal(folder.resolve("journal")));
+            default -> throw new IllegalArgumentException("Unknown logging mode " + mode);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        logging.close();
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void markTask() {
+        logging.markTask(uuid, "bench", TaskStatus.DONE);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.tesdev.taskconveyor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-task outcomes of a BatchTaskExecutor call, safe to report from several threads.
+// Tasks without an outcome are finalized like single tasks: done under autoDone, denied otherwise,
+// and retried by the type's policy (denied without one) when the call threw.
+public class BatchResult {
+    private final Map<Task, Outcome> outcomes = new ConcurrentHashMap<>();
+
+    BatchResult() { }
+
+    public void done(Task task) {
+        outcomes.put(task, Outcome.DONE);
+    }
+
+    public void deny(Task task) {
+        outcomes.put(task, Outcome.DENY);
+    }
+
+    // next attempt by the type's retry policy (or the default one), denied once it is exhausted,
+    // so a row that always fails drops out of later batches
+    public void retry(Task task) {
+        outcomes.put(task, Outcome.RETRY);
+    }
+
+    Outcome outcome(Task task) {
+        return outcomes.get(task);
+    }
+
+    enum Outcome { DONE, DENY, RETRY }
+}
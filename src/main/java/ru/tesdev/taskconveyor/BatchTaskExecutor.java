@@ -0,0 +1,10 @@
+package ru.tesdev.taskconveyor;
+
+import org.slf4j.Logger;
+
+import java.util.List;
+
+public interface BatchTaskExecutor {
+    // tasks are all of the registered type; outcomes reported to the result are written in one go once this returns
+    void execute(List<Task> tasks, BatchResult result, Logger logger);
+}
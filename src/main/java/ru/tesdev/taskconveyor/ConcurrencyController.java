@@ -0,0 +1,163 @@
+package ru.tesdev.taskconveyor;
+
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
+import ru.tesdev.taskconveyor.types.AdaptiveConcurrency;
+import ru.tesdev.taskconveyor.types.HistogramSnapshot;
+import ru.tesdev.taskconveyor.types.TypeOptions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Moves the concurrency limit of adaptive types once per window (AIMD): multiplicative decrease when the
+// window's executions were slow, threw or timed out, or database writes were slow, additive increase
+// while tasks were held back by the limit itself
+class ConcurrencyController implements AutoCloseable {
+    private static final long TICK_MILLIS = 50;
+    // how fast the latency floors follow a lasting rise, per window
+    private static final double BASELINE_DRIFT = 1.02;
+
+    private final Scheduler scheduler;
+    private final MetricsRegistry metrics;
+    private final LimitListener listener;
+    private final Map<String, TypeWindow> windows = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+
+    ConcurrencyController(Scheduler scheduler, MetricsRegistry metrics, LimitListener listener) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.listener = listener;
+    }
+
+    // after Scheduler.register, the type starts at the policy's initial limit
+    void register(String type, TypeOptions options) {
+        AdaptiveConcurrency policy = options.getAdaptiveConcurrency();
+        if (policy == null) {
+            windows.remove(type);
+            return;
+        }
+        int max = options.getMaxConcurrency() > 0 ? Math.min(policy.getMax(), options.getMaxConcurrency()) : policy.getMax();
+        int min = Math.min(policy.getMin(), max);
+        TypeWindow window = new TypeWindow(policy, min, max, metrics.dbWriteLatency());
+        windows.put(type, window);
+        scheduler.setLimit(type, window.limit);
+    }
+
+    void record(String type, long latencyNanos, boolean error) {
+        TypeWindow window = windows.get(type);
+        if (window == null) { return; }
+        window.executions.increment();
+        window.latency.add(latencyNanos);
+        if (error) {
+            window.errors.increment();
+        }
+    }
+
+    synchronized void start() {
+        if (timer != null) { return; }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskConveyor-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        HistogramSnapshot db = null;
+        for (Map.Entry<String, TypeWindow> entry : windows.entrySet()) {
+            TypeWindow window = entry.getValue();
+            if (now - window.startedAt < window.policy.getWindowMillis()) { continue; }
+            if (db == null) {
+                db = metrics.dbWriteLatency();
+            }
+            window.startedAt = now;
+            adjust(entry.getKey(), window, db);
+        }
+    }
+
+    private void adjust(String type, TypeWindow window, HistogramSnapshot db) {
+        AdaptiveConcurrency policy = window.policy;
+        long executions = window.executions.sumThenReset();
+        long latency = window.latency.sumThenReset();
+        long errors = window.errors.sumThenReset();
+        boolean throttled = scheduler.takeThrottled(type);
+
+        boolean dbSlow = false;
+        long writes = db.count() - window.dbCount;
+        if (writes > 0) {
+            double mean = (double) (db.sum() - window.dbSum) / writes;
+            dbSlow = window.dbBaseline > 0 && mean > window.dbBaseline * policy.getDbLatencyTolerance();
+            window.dbBaseline = floor(window.dbBaseline, mean);
+        }
+        window.dbCount = db.count();
+        window.dbSum = db.sum();
+
+        boolean slow = false;
+        boolean failing = false;
+        if (executions > 0) {
+            double mean = (double) latency / executions;
+            slow = window.baseline > 0 && mean > window.baseline * policy.getLatencyTolerance();
+            failing = (double) errors / executions > policy.getMaxErrorRate();
+            window.baseline = floor(window.baseline, mean);
+        }
+
+        int previous = window.limit;
+        if (slow || failing || dbSlow) {
+            window.limit = Math.max(window.min, (int) (previous * policy.getBackoff()));
+        } else if (throttled && executions > 0) {
+            // nothing finished means executions outlast the window, more of them would only be guessing
+            window.limit = Math.min(window.max, previous + policy.getIncrease());
+        }
+        if (window.limit != previous) {
+            scheduler.setLimit(type, window.limit);
+            listener.changed(type, previous, window.limit);
+        }
+    }
+
+    // follows drops at once and rises slowly, so a lasting change in the workload becomes the new normal
+    private static double floor(double baseline, double sample) {
+        return baseline == 0 ? sample : Math.min(sample, baseline * BASELINE_DRIFT);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer == null) { return; }
+        timer.shutdownNow();
+        timer = null;
+    }
+
+    @FunctionalInterface
+    interface LimitListener {
+        void changed(String type, int previous, int limit);
+    }
+
+    private static class TypeWindow {
+        private final AdaptiveConcurrency policy;
+        private final int min;
+        private final int max;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder latency = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private volatile int limit;
+        private long startedAt = System.currentTimeMillis();
+        // usual execution and database write latency
+        private double baseline;
+        private double dbBaseline;
+        private long dbCount;
+        private long dbSum;
+
+        private TypeWindow(AdaptiveConcurrency policy, int min, int max, HistogramSnapshot db) {
+            this.policy = policy;
+            this.min = min;
+            this.max = max;
+            this.limit = Math.max(min, Math.min(max, policy.getInitial()));
+            this.dbCount = db.count();
+            this.dbSum = db.sum();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.tesdev.taskconveyor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Timeout of one execution, a single task or a whole batch. Expiry and the end of the execution race
+// on the state, so a late interrupt can never reach the next task of the worker thread.
+class Deadline implements Runnable {
+    private static final int RUNNING = 0;
+    private static final int FINISHED = 1;
+    private static final int EXPIRING = 2;
+    private static final int EXPIRED = 3;
+
+    private final List<Task> tasks;
+    private final Thread worker;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private HashedWheelTimer.Timeout timeout;
+
+    private Deadline(List<Task> tasks, Thread worker) {
+        this.tasks = tasks;
+        this.worker = worker;
+    }
+
+    static Deadline start(HashedWheelTimer timer, List<Task> tasks, long timeoutMillis) {
+        Deadline deadline = new Deadline(tasks, Thread.currentThread());
+        deadline.timeout = timer.schedule(deadline, timeoutMillis);
+        return deadline;
+    }
+
+    // on the timer thread
+    @Override
+    public void run() {
+        if (!state.compareAndSet(RUNNING, EXPIRING)) { return; }
+        tasks.forEach(Task::cancel);
+        worker.interrupt();
+        state.set(EXPIRED);
+    }
+
+    // on the worker once the executor returned, true if the deadline expired first.
+    // The interrupt it delivered is cleared before the thread moves on.
+    boolean finish() {
+        if (state.compareAndSet(RUNNING, FINISHED)) {
+            timeout.cancel();
+            return false;
+        }
+        while (state.get() != EXPIRED) {
+            Thread.onSpinWait();
+        }
+        Thread.interrupted();
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package ru.tesdev.taskconveyor;
+
+import org.slf4j.Logger;
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
+import ru.tesdev.taskconveyor.types.EventDispatchOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Hands task ends and poll causes to the EventsExecutor from dispatcher threads, so workers and the poller
+// only pay for a queue offer. Consecutive task ends reach the listener as one onTasksEnd batch.
+class EventDispatcher implements AutoCloseable {
+    private static final long IDLE_MILLIS = 100;
+
+    private final EventDispatchOptions options;
+    private final Supplier<EventsExecutor> listener;
+    private final MetricsRegistry metrics;
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    EventDispatcher(EventDispatchOptions options, Supplier<EventsExecutor> listener, MetricsRegistry metrics) {
+        this.options = options;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.shards = new Shard[options.getDispatcherThreads()];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = new Shard(options.getQueueSize());
+            shard.thread = new Thread(() -> run(shard), shards.length == 1 ? "TaskConveyor-events" : "TaskConveyor-events-" + i);
+            shard.thread.setDaemon(true);
+            shard.thread.start();
+            shards[i] = shard;
+        }
+    }
+
+    void taskEnded(Task task, Logger logger) {
+        raise(task.getType(), new Event(System.nanoTime(), task, null, null, logger));
+    }
+
+    void pollCause(UUID taskId, String type, Throwable cause, Logger logger) {
+        raise(type, new Event(System.nanoTime(), null, taskId, cause, logger));
+    }
+
+    int queued() {
+        int queued = 0;
+        for (Shard shard : shards) {
+            queued += shard.queue.size();
+        }
+        return queued;
+    }
+
+    private void raise(String type, Event event) {
+        ArrayBlockingQueue<Event> queue = shards[type == null ? 0 : Math.floorMod(type.hashCode(), shards.length)].queue;
+        if (closed) {
+            metrics.recordDroppedEvent();
+            return;
+        }
+        switch (options.getOverflowPolicy()) {
+            case DROP -> {
+                if (!queue.offer(event)) {
+                    metrics.recordDroppedEvent();
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        metrics.recordDroppedEvent();
+                    }
+                }
+            }
+            case BLOCK -> {
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    metrics.recordDroppedEvent();
+                }
+            }
+        }
+    }
+
+    private void run(Shard shard) {
+        List<Event> batch = new ArrayList<>(options.getMaxBatchSize());
+        List<Task> ended = new ArrayList<>(options.getMaxBatchSize());
+        while (true) {
+            Event first;
+            try {
+                first = shard.queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (closed) { return; }
+                continue;
+            }
+            batch.add(first);
+            shard.queue.drainTo(batch, options.getMaxBatchSize() - 1);
+            long now = System.nanoTime();
+            for (Event event : batch) {
+                metrics.recordEventDispatch(now - event.raisedAt);
+                if (event.task != null) {
+                    ended.add(event.task);
+                    continue;
+                }
+                // a poll cause keeps its place between the task ends around it
+                deliver(ended, event.logger);
+                deliver(event);
+            }
+            deliver(ended, batch.get(batch.size() - 1).logger);
+            batch.clear();
+        }
+    }
+
+    private void deliver(List<Task> ended, Logger logger) {
+        if (ended.isEmpty()) { return; }
+        try {
+            listener.get().onTasksEnd(List.copyOf(ended), logger);
+        } catch (RuntimeException e) {
+            logger.error("Event listener failed on {} task ends: {}", ended.size(), e.getMessage());
+        }
+        ended.clear();
+    }
+
+    private void deliver(Event cause) {
+        try {
+            listener.get().onPollCause(cause.taskId, cause.logger, cause.cause);
+        } catch (RuntimeException e) {
+            cause.logger.error("Event listener failed on poll cause of task {}: {}", cause.taskId, e.getMessage());
+        }
+    }
+
+    // queued events are still delivered, the threads stop once their queue is empty
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private record Event(long raisedAt, Task task, UUID taskId, Throwable cause, Logger logger) { }
+
+    private static class Shard {
+        private final ArrayBlockingQueue<Event> queue;
+        private Thread thread;
+
+        private Shard(int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+    }
+}
@@ -2,12 +2,20 @@ package ru.tesdev.taskconveyor;
 
 import org.slf4j.Logger;
 
+import java.util.List;
 import java.util.UUID;
 
 public abstract class EventsExecutor {
     public void onPollingStart(Logger logger, TaskConveyor conveyor) { }
     public void onPollingStop(Logger logger, TaskConveyor conveyor) { }
     public void onTaskEnd(Task task, Logger logger) { }
+    // with async events task ends arrive here in batches, in the order they ended
+    public void onTasksEnd(List<Task> tasks, Logger logger) {
+        for (Task task : tasks) {
+            onTaskEnd(task, logger);
+        }
+    }
+    public void onConcurrencyLimitChange(String type, int previous, int limit, Logger logger) { }
     public void onPollCause(UUID taskUUID, Logger logger, Throwable exception) {
         logger.error("Poll Cause: {}", exception.getMessage());
     }
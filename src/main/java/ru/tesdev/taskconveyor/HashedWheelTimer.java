@@ -0,0 +1,111 @@
+package ru.tesdev.taskconveyor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// One thread for every pending timeout: callers only append to a queue, the timer thread files new timeouts
+// into the slot of the tick they expire on and each tick fires one slot. Expiry is accurate to one tick,
+// a cancelled timeout is dropped the next time the timer passes its slot.
+class HashedWheelTimer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+
+    private final long tickNanos;
+    private final long startedAt = System.nanoTime();
+    private final List<ArrayDeque<Timeout>> wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    HashedWheelTimer(long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) { throw new IllegalArgumentException("Wheel size must be a power of two"); }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        this.mask = wheelSize - 1;
+        this.worker = new Thread(this::run, "TaskConveyor-timer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    Timeout schedule(Runnable action, long delayMillis) {
+        Timeout timeout = new Timeout(action, System.nanoTime() - startedAt + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long sleep = tickNanos * (tick + 1) - (System.nanoTime() - startedAt);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            fileNew();
+            fire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void fileNew() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) { continue; }
+            // a deadline already behind the timer fires on the current tick
+            long due = Math.max(timeout.deadlineNanos / tickNanos, tick);
+            timeout.rounds = (due - tick) / wheel.size();
+            wheel.get((int) (due & mask)).addLast(timeout);
+        }
+    }
+
+    private void fire(ArrayDeque<Timeout> slot) {
+        for (int i = slot.size(); i > 0; i--) {
+            Timeout timeout = slot.pollFirst();
+            if (timeout.cancelled) { continue; }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                slot.addLast(timeout);
+                continue;
+            }
+            try {
+                timeout.action.run();
+            } catch (RuntimeException e) {
+                // the timer thread must survive a failing action, the other timeouts of the slot still fire
+                logger.error("Timeout action failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    static class Timeout {
+        private final Runnable action;
+        private final long deadlineNanos;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable action, long deadlineNanos) {
+            this.action = action;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.tesdev.taskconveyor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+
+// Decodes the raw payload column of one task type, built once at registration
+@FunctionalInterface
+public interface PayloadCodec<T> {
+    T decode(String rawPayload) throws TaskPayloadException;
+
+    // the reader is resolved for the target class once, decoding skips the JsonNode tree entirely
+    static <T> PayloadCodec<T> of(Class<T> payloadType) {
+        ObjectReader reader = Task.MAPPER.readerFor(payloadType);
+        return rawPayload -> {
+            try {
+                return reader.readValue(rawPayload == null ? "null" : rawPayload);
+            } catch (JsonProcessingException e) {
+                throw new TaskPayloadException(e.getOriginalMessage());
+            }
+        };
+    }
+}
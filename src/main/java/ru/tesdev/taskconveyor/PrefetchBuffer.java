@@ -0,0 +1,88 @@
+package ru.tesdev.taskconveyor;
+
+import ru.tesdev.taskconveyor.types.PrefetchStats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounds how many claimed tasks may sit between poll() and the end of their execution
+class PrefetchBuffer {
+    private final Object monitor = new Object();
+    private int capacity;
+    private int inFlight;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder skippedPolls = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private volatile long maxWaitNanos;
+
+    PrefetchBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // blocks while the buffer is full, returns the number of free slots (0 on timeout)
+    int awaitFree(long timeoutMillis) throws InterruptedException {
+        synchronized (monitor) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (inFlight >= capacity) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    skippedPolls.increment();
+                    return 0;
+                }
+                monitor.wait(remaining);
+            }
+            return capacity - inFlight;
+        }
+    }
+
+    // room for one full batch of a batch type next to the single tasks
+    void reserve(int slots) {
+        synchronized (monitor) {
+            if (capacity == Integer.MAX_VALUE) { return; }
+            capacity += slots;
+            monitor.notifyAll();
+        }
+    }
+
+    void enqueued() {
+        synchronized (monitor) {
+            inFlight++;
+        }
+        queued.incrementAndGet();
+    }
+
+    void started(long enqueuedAt) {
+        queued.decrementAndGet();
+        long waited = System.nanoTime() - enqueuedAt;
+        waitCount.increment();
+        waitNanos.add(waited);
+        if (waited > maxWaitNanos) { maxWaitNanos = waited; }
+    }
+
+    void finished() {
+        synchronized (monitor) {
+            inFlight--;
+            monitor.notifyAll();
+        }
+    }
+
+    PrefetchStats stats() {
+        int current;
+        int size;
+        synchronized (monitor) {
+            current = inFlight;
+            size = capacity;
+        }
+        long count = waitCount.sum();
+        return new PrefetchStats(
+                size,
+                current,
+                queued.get(),
+                skippedPolls.sum(),
+                count == 0 ? 0 : waitNanos.sum() / count,
+                maxWaitNanos
+        );
+    }
+}
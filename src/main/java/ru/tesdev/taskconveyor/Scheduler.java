@@ -0,0 +1,379 @@
+package ru.tesdev.taskconveyor;
+
+import ru.tesdev.taskconveyor.types.TypeOptions;
+import ru.tesdev.taskconveyor.types.TypeStats;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Orders claimed tasks across types: strict priority, then stride-scheduled weights,
+// bounded by per-type concurrency, per-type rate limits and the global worker count.
+// Batch types are dispatched as lists that take one worker (and count as one running) each.
+class Scheduler {
+    private final int maxRunning;
+    private final int prefetchCapacity;
+    private final Map<String, TypeState> types = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition room = lock.newCondition();
+
+    private int running;
+    private int saturated;
+    private boolean skipped;
+    private int totalWeight;
+    private double globalPass;
+    private Thread dispatcher;
+    private volatile boolean active;
+
+    Scheduler(int maxRunning, int prefetchCapacity) {
+        this.maxRunning = maxRunning;
+        this.prefetchCapacity = prefetchCapacity;
+    }
+
+    void register(String type, TypeOptions options) {
+        register(type, options, 1, 0);
+    }
+
+    // A batch waits for batchSize tasks, or until its oldest task waited lingerNanos.
+    // Registering a type again updates it in place, its queued and running tasks carry over
+    void register(String type, TypeOptions options, int batchSize, long lingerNanos) {
+        lock.lock();
+        try {
+            TypeState state = types.get(type);
+            if (state == null) {
+                types.put(type, new TypeState(options, batchSize, lingerNanos));
+                totalWeight += options.getWeight();
+                return;
+            }
+            totalWeight += options.getWeight() - state.options.getWeight();
+            state.configure(options, batchSize, lingerNanos);
+            if (state.saturated && state.queue.size() < fetchBound(state)) {
+                state.saturated = false;
+                saturated--;
+                room.signalAll();
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void start(Consumer<Task> dispatch, Consumer<List<Task>> dispatchBatch) {
+        active = true;
+        dispatcher = new Thread(() -> dispatchLoop(dispatch, dispatchBatch), "TaskConveyorScheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    // stops dispatching and hands back every task that never reached a worker
+    List<Task> stop() {
+        List<Task> drained = new ArrayList<>();
+        lock.lock();
+        try {
+            active = false;
+            for (TypeState state : types.values()) {
+                drained.addAll(state.queue);
+                state.queue.clear();
+            }
+            changed.signalAll();
+            room.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return drained;
+    }
+
+    // false once stopped, the caller keeps ownership of the task
+    boolean enqueue(Task task) {
+        lock.lock();
+        try {
+            if (!active) { return false; }
+            TypeState state = types.get(task.getType());
+            if (state.queue.isEmpty()) {
+                // a type returning from idle must not replay the share it did not use
+                state.pass = Math.max(state.pass, globalPass);
+            }
+            state.queue.addLast(task);
+            changed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finished(String type) {
+        lock.lock();
+        try {
+            types.get(type).running--;
+            running--;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // One claim query per priority level above the lowest, then one for everything else
+    // (including unregistered types). Types that already have enough tasks buffered are skipped.
+    List<ClaimTier> claimTiers() {
+        TreeMap<Integer, List<String>> byPriority = new TreeMap<>(Comparator.reverseOrder());
+        List<String> excluded = new ArrayList<>();
+        lock.lock();
+        try {
+            skipped = false;
+            int lowest = types.values().stream().mapToInt(state -> state.options.getPriority()).min().orElse(0);
+            for (Map.Entry<String, TypeState> entry : types.entrySet()) {
+                TypeState state = entry.getValue();
+                if (state.queue.size() >= fetchBound(state)) {
+                    excluded.add(entry.getKey());
+                    skipped = true;
+                    if (!state.saturated) {
+                        state.saturated = true;
+                        saturated++;
+                    }
+                } else if (state.options.getPriority() > lowest) {
+                    byPriority.computeIfAbsent(state.options.getPriority(), p -> new ArrayList<>()).add(entry.getKey());
+                    excluded.add(entry.getKey());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<ClaimTier> tiers = new ArrayList<>();
+        byPriority.values().forEach(tierTypes -> tiers.add(new ClaimTier(true, tierTypes)));
+        tiers.add(new ClaimTier(false, excluded));
+        return tiers;
+    }
+
+    // A claim that skipped full types can come back short while rows are still due for them,
+    // the poller waits here for one of them to drain instead of for a notification that will not come.
+    // Returns false at once when the last claim skipped nothing.
+    boolean awaitRoom(long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            if (!skipped) { return false; }
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (saturated > 0 && nanos > 0) {
+                nanos = room.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a lower limit lets running tasks finish and only holds back new dispatches
+    void setLimit(String type, int limit) {
+        lock.lock();
+        try {
+            TypeState state = types.get(type);
+            state.limit = limit;
+            if (state.saturated && state.queue.size() < fetchBound(state)) {
+                state.saturated = false;
+                saturated--;
+                room.signalAll();
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // whether the type had tasks waiting on its concurrency limit since the last call
+    boolean takeThrottled(String type) {
+        lock.lock();
+        try {
+            TypeState state = types.get(type);
+            boolean throttled = state.throttled || (!state.queue.isEmpty() && !state.hasConcurrency());
+            state.throttled = false;
+            return throttled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // -1 when unbounded
+    int limit(String type) {
+        lock.lock();
+        try {
+            TypeState state = types.get(type);
+            return state == null || state.limit <= 0 ? -1 : state.limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, TypeStats> stats() {
+        Map<String, TypeStats> stats = new HashMap<>();
+        lock.lock();
+        try {
+            types.forEach((type, state) -> stats.put(type, new TypeStats(state.queue.size(), state.running, state.dispatched,
+                    state.limit <= 0 ? -1 : state.limit)));
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    private int fetchBound(TypeState state) {
+        long bound = Integer.MAX_VALUE;
+        if (prefetchCapacity != Integer.MAX_VALUE) {
+            bound = Math.max(1, (long) prefetchCapacity * state.options.getWeight() / Math.max(1, totalWeight));
+        }
+        // a batch type can always buffer one full batch
+        bound = Math.max(bound, state.batchSize);
+        if (state.limit > 0) {
+            bound = Math.min(bound, (long) state.limit * state.batchSize);
+        }
+        if (state.options.getRateLimit() > 0) {
+            bound = Math.min(bound, (long) Math.ceil(state.options.getRateLimit()));
+        }
+        return (int) bound;
+    }
+
+    private void dispatchLoop(Consumer<Task> dispatch, Consumer<List<Task>> dispatchBatch) {
+        while (active) {
+            Task task = null;
+            List<Task> batch = null;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                TypeState next = null;
+                long waitNanos = Long.MAX_VALUE;
+                if (running < maxRunning) {
+                    for (TypeState state : types.values()) {
+                        if (state.queue.isEmpty()) { continue; }
+                        if (!state.hasConcurrency()) {
+                            state.throttled = true;
+                            continue;
+                        }
+                        state.refill(now);
+                        if (state.tokens < 1) {
+                            waitNanos = Math.min(waitNanos, state.nanosUntilToken());
+                            continue;
+                        }
+                        long lingering = state.nanosUntilBatch(now);
+                        if (lingering > 0) {
+                            waitNanos = Math.min(waitNanos, lingering);
+                            continue;
+                        }
+                        if (next == null || state.before(next)) {
+                            next = state;
+                        }
+                    }
+                }
+                if (next == null) {
+                    try {
+                        if (waitNanos == Long.MAX_VALUE) {
+                            changed.await();
+                        } else {
+                            changed.awaitNanos(waitNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                if (next.batchSize == 1) {
+                    task = next.queue.pollFirst();
+                    next.dispatched++;
+                    next.tokens--;
+                } else {
+                    int size = (int) Math.max(1, Math.min(Math.min(next.batchSize, next.queue.size()), Math.floor(next.tokens)));
+                    batch = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        batch.add(next.queue.pollFirst());
+                    }
+                    next.dispatched += size;
+                    next.tokens -= size;
+                }
+                if (next.saturated && next.queue.size() < fetchBound(next)) {
+                    next.saturated = false;
+                    saturated--;
+                    room.signalAll();
+                }
+                next.running++;
+                next.pass += 1.0 / next.options.getWeight();
+                globalPass = next.pass;
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            if (batch == null) {
+                dispatch.accept(task);
+            } else {
+                dispatchBatch.accept(batch);
+            }
+        }
+    }
+
+    record ClaimTier(boolean include, List<String> types) { }
+
+    private static class TypeState {
+        private TypeOptions options;
+        private int batchSize;
+        private long lingerNanos;
+        private final ArrayDeque<Task> queue = new ArrayDeque<>();
+        private int running;
+        // maxConcurrency, or the current adaptive limit, <= 0 when unbounded
+        private int limit;
+        // had tasks waiting on the limit while workers were free
+        private boolean throttled;
+        // skipped by the last claim for having enough buffered
+        private boolean saturated;
+        private long dispatched;
+        private double pass;
+        private double tokens;
+        private long lastRefill;
+
+        private TypeState(TypeOptions options, int batchSize, long lingerNanos) {
+            configure(options, batchSize, lingerNanos);
+        }
+
+        private void configure(TypeOptions options, int batchSize, long lingerNanos) {
+            this.options = options;
+            this.batchSize = batchSize;
+            this.lingerNanos = lingerNanos;
+            this.limit = options.getMaxConcurrency();
+            this.tokens = options.getRateLimit() > 0 ? options.getRateLimit() : Double.MAX_VALUE;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private boolean hasConcurrency() {
+            return limit <= 0 || running < limit;
+        }
+
+        private void refill(long now) {
+            if (options.getRateLimit() <= 0) { return; }
+            double burst = Math.max(1, options.getRateLimit());
+            tokens = Math.min(burst, tokens + (now - lastRefill) * options.getRateLimit() / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+
+        private long nanosUntilToken() {
+            return Math.max(1, (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / options.getRateLimit()));
+        }
+
+        // 0 once a batch is full or its oldest task lingered long enough
+        private long nanosUntilBatch(long now) {
+            if (batchSize == 1 || queue.size() >= batchSize) { return 0; }
+            return Math.max(0, queue.peekFirst().enqueuedAt + lingerNanos - now);
+        }
+
+        private boolean before(TypeState other) {
+            if (options.getPriority() != other.options.getPriority()) {
+                return options.getPriority() > other.options.getPriority();
+            }
+            return pass < other.pass;
+        }
+    }
+}
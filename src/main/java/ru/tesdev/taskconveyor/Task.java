@@ -1,17 +1,33 @@
 package ru.tesdev.taskconveyor;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import ru.tesdev.taskconveyor.exceptions.TaskConveyorException;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
 import ru.tesdev.taskconveyor.services.TaskService;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.RetryPolicy;
 import ru.tesdev.taskconveyor.types.TaskStatus;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 public class Task {
+    // ObjectMapper and ObjectReader are thread-safe once configured, one instance serves every task
+    static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory());
+    private static final ObjectReader TREE_READER = MAPPER.reader();
+
     private final int index;
     private final UUID id;
     private final String type;
-    private final JsonNode payload;
+    private final String rawPayload;
+    private volatile JsonNode payload;
     private TaskStatus status;
     private final long createdAt;
     private final String owner;
@@ -19,14 +35,33 @@ public class Task {
     private boolean locked;
 
     private final TaskService service;
+    // nanoTime of the claim, used for queue wait accounting
+    long enqueuedAt;
+    // set by the worker when the type was registered with a payload codec
+    Object decodedPayload;
+    // executions including the current one, counted by the claim
+    int attempts;
+    RetryPolicy retryPolicy;
+    // handler of the claiming conveyor, emitted children without their own handler go to it
+    String handlerName;
+    private List<NewTask> children;
+    private volatile boolean cancelled;
 
     public Task(int index,UUID id, String type, JsonNode payload,
                 TaskStatus status, long createdAt, String owner, String description, boolean locked,
                 TaskService service) {
+        this(index, id, type, payload == null ? null : payload.toString(), status, createdAt, owner, description, locked, service);
+        this.payload = payload;
+    }
+
+    // the payload is kept as the raw column value and only parsed when an executor asks for it
+    Task(int index, UUID id, String type, String rawPayload,
+                TaskStatus status, long createdAt, String owner, String description, boolean locked,
+                TaskService service) {
         this.index = index;
         this.id = id;
         this.type = type;
-        this.payload = payload;
+        this.rawPayload = rawPayload;
         this.status = status;
         this.createdAt = createdAt;
         this.owner = owner;
@@ -35,16 +70,55 @@ public class Task {
         this.service = service;
     }
 
+    // emitted children are written in the same transaction as the transition to done
     public void done() throws TaskConveyorException {
-        service.updateStatus(this.id, TaskStatus.DONE);
-        service.setLock(this.id, true);
-        this.status = TaskStatus.DENY;
+        if (children == null) {
+            service.complete(this.id, this.type, TaskStatus.DONE);
+        } else {
+            List<NewTask> emitted = children;
+            children = null;
+            service.complete(this.id, this.type, TaskStatus.DONE, handlerName, emitted);
+        }
+        this.status = TaskStatus.DONE;
+        this.locked = true;
     }
 
+    // a denied or rescheduled task drops its emitted children, the next attempt emits them again
     public void deny() throws TaskConveyorException {
-        service.updateStatus(this.id, TaskStatus.DENY);
-        service.setLock(this.id, true);
+        children = null;
+        service.complete(this.id, this.type, TaskStatus.DENY);
         this.status = TaskStatus.DENY;
+        this.locked = true;
+    }
+
+    public void retryAfter(Duration delay) throws TaskConveyorException {
+        scheduleAt(Instant.now().plus(delay));
+    }
+
+    // returns the task to new without holding a worker, it is claimed again once runAt has passed
+    public void scheduleAt(Instant runAt) throws TaskConveyorException {
+        children = null;
+        service.schedule(this.id, this.type, runAt);
+        this.status = TaskStatus.NEW;
+    }
+
+    // next attempt after the backoff of the type's retry policy (RetryPolicy.defaults() when it has none),
+    // denied once the policy is exhausted
+    public void retry() throws TaskConveyorException {
+        RetryPolicy policy = retryPolicy != null ? retryPolicy : RetryPolicy.defaults();
+        if (policy.exhausted(attempts)) {
+            deny();
+        } else {
+            retryAfter(policy.delayFor(attempts));
+        }
+    }
+
+    // follow-up task, nothing is written until done()
+    public void emit(NewTask child) {
+        if (children == null) {
+            children = new ArrayList<>();
+        }
+        children.add(child);
     }
 
     public void unlock() throws TaskConveyorException {
@@ -57,10 +131,46 @@ public class Task {
         this.status = status;
     }
 
+    // set once the type's timeout expired, long-running executors should check it and give up
+    public boolean isCancelled() { return cancelled; }
+
+    void cancel() { cancelled = true; }
+
+    boolean hasChildren() { return children != null; }
+
+    // the final transition was written by a batch, outside done() and deny()
+    void completed(TaskStatus status) {
+        this.status = status;
+        this.locked = true;
+    }
+
     public int getIndex() { return index; }
     public UUID getId() { return id; }
     public String getType() { return type; }
-    public JsonNode getPayload() { return payload; }
+    public JsonNode getPayload() {
+        JsonNode parsed = payload;
+        if (parsed == null && rawPayload != null) {
+            try {
+                parsed = TREE_READER.readTree(rawPayload);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(String.format("Error in format payload of task %s: %s", id, e.getMessage()));
+            }
+            payload = parsed;
+        }
+        return parsed;
+    }
+
+    // binds the payload straight to a POJO without building a JsonNode tree
+    public <T> T getPayload(Class<T> payloadType) throws TaskPayloadException {
+        try {
+            return MAPPER.readValue(rawPayload == null ? "null" : rawPayload, payloadType);
+        } catch (JsonProcessingException e) {
+            throw new TaskPayloadException(e.getMessage());
+        }
+    }
+
+    public String getRawPayload() { return rawPayload; }
+    public int getAttempts() { return attempts; }
     public TaskStatus getStatus() {return status; }
     public String getOwner() {return owner; }
     public long createdAt() { return createdAt; }
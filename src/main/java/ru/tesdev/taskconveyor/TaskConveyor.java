@@ -1,41 +1,96 @@
 package ru.tesdev.taskconveyor;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-
 import ru.tesdev.taskconveyor.types.TaskStatus;
 import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.EventDispatchOptions;
+import ru.tesdev.taskconveyor.types.FlushPolicy;
+import ru.tesdev.taskconveyor.types.LoggingOptions;
+import ru.tesdev.taskconveyor.types.MetricsSnapshot;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.PoolStats;
+import ru.tesdev.taskconveyor.types.PrefetchStats;
+import ru.tesdev.taskconveyor.types.RetentionPolicy;
+import ru.tesdev.taskconveyor.types.RetryPolicy;
+import ru.tesdev.taskconveyor.types.TimeoutAction;
+import ru.tesdev.taskconveyor.types.TypeOptions;
+import ru.tesdev.taskconveyor.types.TypeStats;
+import ru.tesdev.taskconveyor.types.WorkerMode;
+import ru.tesdev.taskconveyor.journal.TaskJournal;
+import ru.tesdev.taskconveyor.metrics.MetricsExporter;
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
 import ru.tesdev.taskconveyor.services.TaskService;
+import ru.tesdev.taskconveyor.services.LeaseKeeper;
 import ru.tesdev.taskconveyor.services.LoggingService;
+import ru.tesdev.taskconveyor.services.RetentionKeeper;
+import ru.tesdev.taskconveyor.store.PostgresTaskStore;
+import ru.tesdev.taskconveyor.store.TaskStore;
 import ru.tesdev.taskconveyor.exceptions.NoValidTaskStatusException;
 import ru.tesdev.taskconveyor.exceptions.PollException;
 import ru.tesdev.taskconveyor.exceptions.TaskConveyorException;
 import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
-public class TaskConveyor {
+public class TaskConveyor implements AutoCloseable {
+    // about 5s per turn of the wheel, longer timeouts take extra rounds
+    private static final long TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
     private final String handlerName;
-    private final DatabaseConfig databaseConfig;
     private final int workerThreads;
+    private final WorkerMode workerMode;
+    private final int batchSize;
+    private final PrefetchBuffer prefetch;
+    private final Scheduler scheduler;
+    private final boolean pushMode;
+    private final long minFallbackPollMillis;
+    private final long maxFallbackPollMillis;
 
     private final Map<String, TaskExecutor> executors = new HashMap<>();
+    private final Map<String, BatchTaskExecutor> batchExecutors = new HashMap<>();
+    // max batch size of each batch type, as reserved in the prefetch buffer
+    private final Map<String, Integer> batchSizes = new HashMap<>();
+    private final Map<String, PayloadCodec<?>> codecs = new HashMap<>();
+    private final Map<String, RetryPolicy> retryPolicies = new HashMap<>();
+    // options of the types registered with a timeout
+    private final Map<String, TypeOptions> timeouts = new HashMap<>();
+    private final TaskStore store;
+    // a store passed to the builder may be shared between conveyors and is closed by its owner
+    private final boolean ownsStore;
     private final TaskService service;
     private final LoggingService logging;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<MetricsExporter> metricsExporters;
+    private final LeaseKeeper leases;
+    private final RetentionKeeper retention;
+    private final ConcurrencyController concurrency;
+    // deadlines of running executions, started with the first type that has a timeout
+    private HashedWheelTimer timer;
+    private final EventDispatcher events;
     private EventsExecutor taskEventExecutor = new EventsExecutor() { };
     private ExecutorService taskPull;
+    private TaskStore.WakeSignal listener;
+    // epoch millis of the earliest task scheduled in the future, as seen by the last poll
+    private volatile long nextDueAt = Long.MAX_VALUE;
 
     private final AtomicBoolean enabled = new AtomicBoolean(false);
     private final AtomicBoolean autoDone = new AtomicBoolean(false);
@@ -48,31 +103,105 @@ public class TaskConveyor {
             int workerThreads,
             boolean autoDone
     ) {
-        this.handlerName = handlerName;
-        this.databaseConfig = databaseConfig;
-        this.logging = new LoggingService(loggingFolder);
-        this.service = new TaskService(databaseConfig, logging);
-        this.workerThreads = workerThreads;
-        this.autoDone.set(autoDone);
+        this(new Builder(handlerName, databaseConfig, null)
+                .loggingFolder(loggingFolder)
+                .workerThreads(workerThreads)
+                .autoDone(autoDone));
+    }
+
+    private TaskConveyor(Builder builder) {
+        this.handlerName = builder.handlerName;
+        this.logging = new LoggingService(builder.loggingFolder, builder.loggingOptions, builder.openJournal());
+        this.ownsStore = builder.store == null;
+        this.store = ownsStore ? new PostgresTaskStore(builder.databaseConfig) : builder.store;
+        this.service = new TaskService(store, logging, builder.resolveFlushPolicy(), builder.statusBatchSize, builder.statusFlushIntervalMillis, metrics);
+        this.metricsExporters = builder.openMetricsExporters(metrics);
+        this.leases = new LeaseKeeper(store, handlerName, builder.resolveNodeId(), builder.leaseMillis, metrics);
+        this.retention = builder.retentionPolicy == null ? null : new RetentionKeeper(store, builder.retentionPolicy, metrics);
+        this.workerThreads = builder.workerThreads;
+        this.workerMode = builder.resolveWorkerMode();
+        this.batchSize = builder.batchSize;
+        this.prefetch = new PrefetchBuffer(switch (workerMode) {
+            case FIXED -> workerThreads * builder.prefetchMultiplier;
+            case CACHED -> Integer.MAX_VALUE;
+            // every in-flight virtual task has its own thread, so the buffer is the concurrency cap
+            case VIRTUAL -> workerThreads == -1 ? Integer.MAX_VALUE : workerThreads;
+        });
+        this.scheduler = new Scheduler(switch (workerMode) {
+            case FIXED -> workerThreads;
+            case CACHED -> Integer.MAX_VALUE;
+            case VIRTUAL -> workerThreads == -1 ? Integer.MAX_VALUE : workerThreads;
+        }, prefetch.stats().capacity());
+        this.concurrency = new ConcurrencyController(scheduler, metrics,
+                (type, previous, limit) -> taskEventExecutor.onConcurrencyLimitChange(type, previous, limit, logger.get()));
+        this.events = builder.eventOptions == null ? null : new EventDispatcher(builder.eventOptions, () -> taskEventExecutor, metrics);
+        this.pushMode = builder.pushMode;
+        this.minFallbackPollMillis = builder.minFallbackPollMillis;
+        this.maxFallbackPollMillis = builder.maxFallbackPollMillis;
+        this.autoDone.set(builder.autoDone);
+    }
+
+    public static Builder builder(String handlerName, DatabaseConfig databaseConfig) {
+        return new Builder(handlerName, databaseConfig, null);
+    }
+
+    // runs on the given store instead of the PostgreSQL schema, e.g. a MemoryTaskStore shared by same-JVM conveyors
+    public static Builder builder(String handlerName, TaskStore store) {
+        return new Builder(handlerName, null, store);
     }
 
     public void infinityPolling() {
         logging.newLogFile();
         enabled.set(true);
-        if (workerThreads == -1) {
-            taskPull = Executors.newCachedThreadPool(new TaskThreadFactory("TaskWorker"));
-        } else {
-            taskPull = Executors.newFixedThreadPool(workerThreads, new TaskThreadFactory("TaskWorker"));
+        switch (workerMode) {
+            case CACHED -> taskPull = Executors.newCachedThreadPool(new TaskThreadFactory("TaskWorker"));
+            // never rejects: the prefetch buffer keeps queued + running tasks within its capacity
+            case FIXED -> taskPull = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(prefetch.stats().capacity()), new TaskThreadFactory("TaskWorker"));
+            case VIRTUAL -> taskPull = TaskThreadFactory.newVirtualThreadPerTaskExecutor("TaskWorker");
+        }
+        scheduler.start(this::dispatch, this::dispatchBatch);
+        leases.start();
+        concurrency.start();
+        if (retention != null) {
+            retention.start();
+        }
+        if (pushMode) {
+            listener = store.listen(List.of(handlerName, "*"));
         }
         new Thread(() -> {
             Thread.currentThread().setName("MainTaskConveyorThread");
+            long fallbackWait = minFallbackPollMillis;
             while (enabled.get()) {
                 try {
-                    poll();
-                    Thread.sleep(1000);
+                    int free = prefetch.awaitFree(maxFallbackPollMillis);
+                    if (free == 0) {
+                        continue;
+                    }
+                    int limit = Math.min(batchSize, free);
+                    int claimed = poll(limit);
+                    if (claimed >= limit || scheduler.awaitRoom(untilDue(minFallbackPollMillis))) {
+                        continue;
+                    }
+                    if (!pushMode) {
+                        Thread.sleep(untilDue(1000));
+                        continue;
+                    }
+                    if (claimed > 0) {
+                        fallbackWait = minFallbackPollMillis;
+                    }
+                    if (listener.await(untilDue(fallbackWait))) {
+                        fallbackWait = minFallbackPollMillis;
+                    } else {
+                        fallbackWait = Math.min(fallbackWait * 2, maxFallbackPollMillis);
+                    }
                 } catch (PollException e) {
                     logger.get().error("Unable to poll");
                     logger.get().error(e.getMessage());
+                    sleepQuietly(minFallbackPollMillis);
+                } catch (SQLException e) {
+                    logger.get().error("Lost notification listener connection: {}", e.getMessage());
+                    sleepQuietly(minFallbackPollMillis);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -84,75 +213,130 @@ public class TaskConveyor {
 
     public void stopPolling() {
         enabled.set(false);
+        if (listener != null) {
+            listener.close();
+        }
+        for (Task task : scheduler.stop()) {
+            release(task);
+        }
         taskPull.shutdown();
         logging.pollingShutdown();
         taskEventExecutor.onPollingStop(logger.get(), this);
     }
 
-    private void poll() throws PollException {
-        try (Connection connection = DriverManager.getConnection(databaseConfig.getConnectUrl(), databaseConfig.getUser(), databaseConfig.getPassword())) {
-            try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM taskconveyor.tc_tasks WHERE status = 'new' AND locked = false AND (handler_name = ? OR handler_name = '*')")) {
-                stmt.setString(1, handlerName);
-                ResultSet rs = stmt.executeQuery();
-                List<Task> tasks = new ArrayList<>();
-                while (rs.next()) {
-                    boolean isNormal = true;
-
-                    int index = rs.getInt("index");
-                    UUID uuid = UUID.fromString(rs.getString("uuid"));
-                    String type = rs.getString("type");
-                    long createdAt = rs.getLong("created_at");
-                    String owner = rs.getString("owner");
-                    String description = rs.getString("description");
-                    boolean locked = rs.getBoolean("locked");
-
-                    JsonNode payload = null;
-                    try {
-                        payload = processingPayload(rs.getString("payload"));
-                    } catch (TaskPayloadException e) {
-                        pollCause(uuid, "Error in format payload");
-                        isNormal = false;
-                    }
+    // shortens a wait so the poller wakes when the next scheduled task becomes due
+    private long untilDue(long waitMillis) {
+        long untilDue = nextDueAt - System.currentTimeMillis();
+        return untilDue > 0 ? Math.min(waitMillis, untilDue) : waitMillis;
+    }
 
-                    TaskStatus status = null;
-                    try {
-                        status = transformTaskStatus(rs.getString("status"));
-                    } catch (NoValidTaskStatusException e) {
-                        pollCause(uuid, String.format("No valid task status %s", rs.getString("status")));
-                        isNormal = false;
-                    }
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                    if (isNormal) {
-                        tasks.add(new Task(index, uuid, type, payload, status, createdAt, owner, description, locked, this.service));
-                    }
-                }
-                executeTasks(tasks);
+    @Override
+    public void close() {
+        if (enabled.get()) {
+            stopPolling();
+        }
+        if (taskPull != null) {
+            try {
+                taskPull.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        leases.close();
+        concurrency.close();
+        if (retention != null) {
+            retention.close();
+        }
+        synchronized (this) {
+            if (timer != null) {
+                timer.close();
             }
+        }
+        if (events != null) {
+            events.close();
+        }
+        if (listener != null) {
+            listener.close();
+        }
+        service.close();
+        if (ownsStore) {
+            store.close();
+        }
+        logging.close();
+        metricsExporters.forEach(MetricsExporter::close);
+    }
+
+    private int poll(int limit) throws PollException {
+        long started = System.nanoTime();
+        try {
+            int claimed = 0;
+            // rejected rows are denied once the claim returned, not from inside the store's claim
+            List<Runnable> rejected = new ArrayList<>();
+            // higher priority types are claimed first so a low priority backlog cannot delay them
+            for (Scheduler.ClaimTier tier : scheduler.claimTiers()) {
+                if (claimed >= limit) { break; }
+                TaskStore.ClaimRequest request = new TaskStore.ClaimRequest(handlerName, tier.include(), tier.types(),
+                        limit - claimed, leases.getNodeId(), leases.getLeaseMillis());
+                claimed += store.claim(request, row -> claimed(row, rejected));
+            }
+            if (claimed < limit) {
+                nextDueAt = store.nextDue(handlerName);
+            }
+            metrics.recordPoll(System.nanoTime() - started, claimed);
+            rejected.forEach(Runnable::run);
+            return claimed;
         } catch (SQLException e) {
             throw new PollException(e.getMessage());
         }
     }
 
-    private void pollCause(UUID uuid, String message) {
+    // called per row of the claim's UPDATE ... RETURNING result, which the store reads in full and only hands
+    // over once the claim committed; the payload stays raw until the worker decodes it
+    private void claimed(TaskStore.ClaimedTask row, List<Runnable> rejected) {
+        TaskStatus status;
         try {
-            service.updateStatus(uuid, TaskStatus.DENY);
-            service.setLock(uuid, true);
-        } catch (Exception e) {
-            logger.get().error(e.getMessage());
+            status = transformTaskStatus(row.status());
+        } catch (NoValidTaskStatusException e) {
+            String message = String.format("No valid task status %s", row.status());
+            rejected.add(() -> pollCause(row.uuid(), row.type(), message));
+            return;
         }
 
-        taskEventExecutor.onPollCause(uuid, logger.get(), new PollException(message));
+        Task task = new Task(row.index(), row.uuid(), row.type(), row.payload(), status, row.createdAt(),
+                row.owner(), row.description(), row.locked(), this.service);
+        task.attempts = row.attempts();
+        task.retryPolicy = retryPolicies.get(row.type());
+        task.handlerName = handlerName;
+        if (executors.containsKey(row.type()) || batchExecutors.containsKey(row.type())) {
+            submitTask(task);
+        } else {
+            rejected.add(() -> denyUnhandled(task));
+        }
     }
 
-    private JsonNode processingPayload(String raw) throws TaskPayloadException {
+    private void pollCause(UUID uuid, String type, String message) {
         try {
-            return new ObjectMapper(new JsonFactory()).readTree(raw);
-        } catch (JsonProcessingException e) {
-            throw new TaskPayloadException(e.getMessage());
+            service.complete(uuid, type, TaskStatus.DENY);
+        } catch (Exception e) {
+            logger.get().error(e.getMessage());
+        }
+
+        if (events != null) {
+            events.pollCause(uuid, type, new PollException(message), logger.get());
+        } else {
+            taskEventExecutor.onPollCause(uuid, logger.get(), new PollException(message));
         }
     }
 
-    private TaskStatus transformTaskStatus(String status) throws NoValidTaskStatusException {
+    static TaskStatus transformTaskStatus(String status) throws NoValidTaskStatusException {
         if (status == null) { throw new NoValidTaskStatusException("Status is null"); }
         try {
             return TaskStatus.valueOf(status.toUpperCase());
@@ -162,7 +346,54 @@ public class TaskConveyor {
     }
 
     private void executeTask(Task task, TaskExecutor executor, Logger logger) {
-        executor.execute(task, logger);
+        PayloadCodec<?> codec = codecs.get(task.getType());
+        if (codec != null) {
+            // decoded on the worker so the polling thread never pays for it
+            try {
+                task.decodedPayload = codec.decode(task.getRawPayload());
+            } catch (TaskPayloadException e) {
+                pollCause(task.getId(), task.getType(), String.format("Error in format payload of task %s: %s", task.getId(), e.getMessage()));
+                return;
+            }
+        }
+        TypeOptions limits = timeouts.get(task.getType());
+        Deadline deadline = limits == null ? null : Deadline.start(timer(), List.of(task), limits.getTimeoutMillis());
+        long started = System.nanoTime();
+        long elapsed;
+        boolean failed = true;
+        boolean timedOut;
+        RuntimeException error = null;
+        try {
+            executor.execute(task, logger);
+            failed = false;
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            elapsed = System.nanoTime() - started;
+            timedOut = deadline != null && deadline.finish();
+            metrics.recordExecution(task.getType(), elapsed, failed || timedOut);
+            if (failed || timedOut) {
+                concurrency.record(task.getType(), elapsed, true);
+            }
+        }
+        if (timedOut) {
+            timedOut(task, limits, logger);
+            taskEnded(task, logger);
+            return;
+        }
+        if (failed) {
+            logger.error("Task {} failed on attempt {}: {}", task.getId(), task.getAttempts(), error.getMessage());
+            // finalized on every throw, a task left in work would be reclaimed and fail again forever
+            try {
+                if (task.getStatus() == TaskStatus.WORK && !task.isLocked()) {
+                    failed(task);
+                }
+            } catch (TaskConveyorException e) {
+                logger.error("Unable to reschedule task {}: {}", task.getId(), e.getMessage());
+            }
+            taskEnded(task, logger);
+            return;
+        }
         try {
             if (autoDone.get() && task.getStatus() == TaskStatus.WORK && !task.isLocked()) {
                 logger.debug("been done");
@@ -176,91 +407,313 @@ public class TaskConveyor {
                 logger.debug("status: {}", task.getStatus().name());
                 logger.debug("locked: {}", task.isLocked());
             }
-        } catch (TaskConveyorException e) { }
+        } catch (TaskConveyorException e) {
+            logger.error("Unable to complete task {}: {}", task.getId(), e.getMessage());
+        }
+        // a deny the executor chose is a verdict on the task, not a sign of an overloaded downstream
+        concurrency.record(task.getType(), elapsed, false);
+        taskEnded(task, logger);
+    }
+
+    // a throwing executor retries by the type's policy, without one the task is denied
+    private static void failed(Task task) throws TaskConveyorException {
+        if (task.retryPolicy == null) {
+            task.deny();
+        } else {
+            task.retry();
+        }
+    }
+
+    // Tasks the executor finalized itself are left alone, the others follow their reported outcome (or the
+    // single task rules when none was reported). Done and deny transitions are written together.
+    private void executeBatch(List<Task> tasks, BatchTaskExecutor executor, Logger logger) {
+        String type = tasks.get(0).getType();
+        TypeOptions limits = timeouts.get(type);
+        Deadline deadline = limits == null ? null : Deadline.start(timer(), tasks, limits.getTimeoutMillis());
+        BatchResult result = new BatchResult();
+        long started = System.nanoTime();
+        long elapsed;
+        boolean timedOut;
+        RuntimeException error = null;
+        try {
+            executor.execute(tasks, result, logger);
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            elapsed = System.nanoTime() - started;
+            timedOut = deadline != null && deadline.finish();
+        }
+        boolean failed = error != null || timedOut;
+        if (error != null) {
+            logger.error("Batch of {} {} tasks failed: {}", tasks.size(), type, error.getMessage());
+        }
+        List<TaskStore.Transition> transitions = new ArrayList<>(tasks.size());
+        List<Task> completed = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            metrics.recordExecution(type, elapsed, failed);
+            if (task.getStatus() != TaskStatus.WORK || task.isLocked()) { continue; }
+            BatchResult.Outcome outcome = result.outcome(task);
+            if (outcome == null && timedOut) {
+                timedOut(task, limits, logger);
+                continue;
+            }
+            if (outcome == null && error != null) {
+                // like a failed single task: retried by the type's policy, denied without one
+                outcome = task.retryPolicy == null ? BatchResult.Outcome.DENY : BatchResult.Outcome.RETRY;
+            }
+            if (outcome == null) {
+                outcome = autoDone.get() ? BatchResult.Outcome.DONE : BatchResult.Outcome.DENY;
+            }
+            try {
+                if (outcome == BatchResult.Outcome.RETRY) {
+                    task.retry();
+                } else if (outcome == BatchResult.Outcome.DONE && task.hasChildren()) {
+                    // children commit with their parent, that takes the parent's own transaction
+                    task.done();
+                } else {
+                    transitions.add(new TaskStore.Transition(task.getId(),
+                            outcome == BatchResult.Outcome.DONE ? TaskStatus.DONE : TaskStatus.DENY, true));
+                    completed.add(task);
+                }
+            } catch (TaskConveyorException e) {
+                logger.error("Unable to complete task {}: {}", task.getId(), e.getMessage());
+            }
+        }
+        try {
+            service.completeAll(type, transitions);
+            for (int i = 0; i < completed.size(); i++) {
+                completed.get(i).completed(transitions.get(i).status());
+            }
+        } catch (TaskConveyorException e) {
+            logger.error("Unable to complete {} tasks of a {} batch: {}", transitions.size(), type, e.getMessage());
+        }
+        for (Task task : tasks) {
+            concurrency.record(type, elapsed, failed);
+            taskEnded(task, logger);
+        }
+    }
 
-        taskEventExecutor.onTaskEnd(task, logger);
+    // whatever the executor did not finalize itself before giving up is finalized by the type's timeout action
+    private void timedOut(Task task, TypeOptions limits, Logger logger) {
+        metrics.recordTimeout(task.getType());
+        logger.warn("Task {} cancelled after its {}ms timeout", task.getId(), limits.getTimeoutMillis());
+        if (task.getStatus() != TaskStatus.WORK || task.isLocked()) { return; }
+        try {
+            if (limits.getTimeoutAction() == TimeoutAction.RETRY) {
+                task.retry();
+            } else {
+                task.deny();
+            }
+        } catch (TaskConveyorException e) {
+            logger.error("Unable to finalize timed out task {}: {}", task.getId(), e.getMessage());
+        }
     }
 
-    private void executeTasks(List<Task> tasks) {
-        for (Task task : tasks.stream().sorted(Comparator.comparingInt(Task::getIndex)).toList()) {
-            if (executors.containsKey(task.getType())) {
-                TaskExecutor executor = executors.get(task.getType());
-                try {
-                    if (enabled.get()) {
-                        logging.executeTask(task);
-                        task.setStatus(TaskStatus.WORK);
-                        taskPull.submit(() -> executeTask(task, executor, logger.get()));
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+    private synchronized HashedWheelTimer timer() {
+        if (timer == null) {
+            timer = new HashedWheelTimer(TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE);
+        }
+        return timer;
+    }
+
+    private void taskEnded(Task task, Logger logger) {
+        if (events != null) {
+            events.taskEnded(task, logger);
+        } else {
+            taskEventExecutor.onTaskEnd(task, logger);
+        }
+    }
+
+    private void submitTask(Task task) {
+        try {
+            if (enabled.get()) {
+                metrics.recordClaim(task.getType(), task.createdAt());
+                task.enqueuedAt = System.nanoTime();
+                leases.track(task.getIndex());
+                prefetch.enqueued();
+                if (!scheduler.enqueue(task)) {
+                    release(task);
                 }
             } else {
+                task.setStatus(TaskStatus.NEW);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void denyUnhandled(Task task) {
+        try {
+            logging.unHandleType(task);
+            service.updateStatus(task.getId(), TaskStatus.DENY);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void dispatch(Task task) {
+        TaskExecutor executor = executors.get(task.getType());
+        if (executor == null) {
+            // a batch type registered with a batch size of 1
+            dispatchBatch(List.of(task));
+            return;
+        }
+        try {
+            taskPull.submit(() -> {
+                prefetch.started(task.enqueuedAt);
                 try {
-                    logging.unHandleType(task);
-                    service.updateStatus(task.getId(), TaskStatus.DENY);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    // journaled by the worker, so the execution latency starts here and not at the claim
+                    logging.executeTask(task);
+                    executeTask(task, executor, logger.get());
+                } finally {
+                    leases.untrack(task.getIndex());
+                    scheduler.finished(task.getType());
+                    prefetch.finished();
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduler.finished(task.getType());
+            release(task);
         }
     }
 
+    private void dispatchBatch(List<Task> tasks) {
+        String type = tasks.get(0).getType();
+        BatchTaskExecutor executor = batchExecutors.get(type);
+        try {
+            taskPull.submit(() -> {
+                tasks.forEach(task -> prefetch.started(task.enqueuedAt));
+                try {
+                    tasks.forEach(logging::executeTask);
+                    executeBatch(tasks, executor, logger.get());
+                } finally {
+                    for (Task task : tasks) {
+                        leases.untrack(task.getIndex());
+                        prefetch.finished();
+                    }
+                    scheduler.finished(type);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduler.finished(type);
+            tasks.forEach(this::release);
+        }
+    }
+
+    // returns a claimed task that never reached a worker back to new
+    private void release(Task task) {
+        leases.untrack(task.getIndex());
+        try {
+            task.setStatus(TaskStatus.NEW);
+        } catch (TaskConveyorException e) {
+            logger.get().error("Unable to release task {}: {}", task.getId(), e.getMessage());
+        }
+        prefetch.started(task.enqueuedAt);
+        prefetch.finished();
+    }
+
+    // tasks without a handler name are enqueued for this conveyor's handler
+    public List<EnqueuedTask> enqueue(List<NewTask> tasks) throws TaskConveyorException {
+        return service.enqueue(handlerName, tasks);
+    }
+
+    public EnqueuedTask enqueue(NewTask task) throws TaskConveyorException {
+        return service.enqueue(handlerName, List.of(task)).get(0);
+    }
+
+    // returns immediately unless too many submits wait for the database, concurrent submits share one insert
+    public CompletableFuture<EnqueuedTask> submit(NewTask task) {
+        return service.submit(handlerName, task);
+    }
+
     public void registerType(String type, TaskExecutor executor) {
+        registerType(type, executor, TypeOptions.defaults());
+    }
+
+    public void registerType(String type, TaskExecutor executor, int maxConcurrency) {
+        registerType(type, executor, TypeOptions.defaults().maxConcurrency(maxConcurrency));
+    }
+
+    public void registerType(String type, TaskExecutor executor, TypeOptions options) {
+        registerType(type, executor, null, options);
+    }
+
+    // the codec (null for untyped executors) is in place before the executor is published, so no task reaches it undecoded
+    private void registerType(String type, TaskExecutor executor, PayloadCodec<?> codec, TypeOptions options) {
+        if (codec == null) {
+            codecs.remove(type);
+        } else {
+            codecs.put(type, codec);
+        }
         executors.put(type, executor);
+        unregisterBatch(type);
+        applyOptions(type, options);
+        scheduler.register(type, options);
+        concurrency.register(type, options);
+    }
+
+    // tasks of the type reach the executor in lists of up to maxBatchSize, a shorter list once the oldest
+    // task waited for linger. A batch takes one worker and counts once against the type's concurrency
+    public void registerType(String type, BatchTaskExecutor executor, int maxBatchSize, Duration linger) {
+        registerType(type, executor, maxBatchSize, linger, TypeOptions.defaults());
+    }
+
+    public void registerType(String type, BatchTaskExecutor executor, int maxBatchSize, Duration linger, TypeOptions options) {
+        if (maxBatchSize < 1) { throw new IllegalArgumentException("Batch size must be positive"); }
+        if (linger.isNegative()) { throw new IllegalArgumentException("Linger must not be negative"); }
+        executors.remove(type);
+        codecs.remove(type);
+        batchExecutors.put(type, executor);
+        Integer previous = batchSizes.put(type, maxBatchSize);
+        prefetch.reserve(maxBatchSize - (previous == null ? 0 : previous));
+        applyOptions(type, options);
+        scheduler.register(type, options, maxBatchSize, linger.toNanos());
+        concurrency.register(type, options);
+    }
+
+    private void unregisterBatch(String type) {
+        batchExecutors.remove(type);
+        Integer previous = batchSizes.remove(type);
+        if (previous != null) {
+            prefetch.reserve(-previous);
+        }
+    }
+
+    private void applyOptions(String type, TypeOptions options) {
+        if (options.getRetryPolicy() != null) {
+            retryPolicies.put(type, options.getRetryPolicy());
+        } else {
+            retryPolicies.remove(type);
+        }
+        if (options.getTimeoutMillis() > 0) {
+            timeouts.put(type, options);
+        } else {
+            timeouts.remove(type);
+        }
+    }
+
+    public <T> void registerType(String type, Class<T> payloadType, TypedTaskExecutor<T> executor) {
+        registerType(type, PayloadCodec.of(payloadType), executor, TypeOptions.defaults());
+    }
+
+    public <T> void registerType(String type, Class<T> payloadType, TypedTaskExecutor<T> executor, TypeOptions options) {
+        registerType(type, PayloadCodec.of(payloadType), executor, options);
+    }
+
+    // payloads the codec rejects are denied through the poll cause path and never reach the executor
+    @SuppressWarnings("unchecked")
+    public <T> void registerType(String type, PayloadCodec<T> codec, TypedTaskExecutor<T> executor, TypeOptions options) {
+        registerType(type, (task, logger) -> executor.execute(task, (T) task.decodedPayload, logger), codec, options);
     }
 
     public void loadEventExecutor(EventsExecutor executor) {
         this.taskEventExecutor = executor;
     }
 
+    // creates the schema on first start and upgrades older ones, safe to call from every conveyor
     public void prepareDataBase() throws TaskConveyorException {
-        try (Connection connection = DriverManager.getConnection(databaseConfig.getConnectUrl(), databaseConfig.getUser(), databaseConfig.getPassword())) {
-            try (PreparedStatement stmt = connection.prepareStatement("""
-                CREATE SCHEMA IF NOT EXISTS taskconveyor;
-                SET search_path TO taskconveyor;
-            
-                -- enum type
-                DO $$
-                BEGIN
-                    IF NOT EXISTS (SELECT 1 FROM pg_type WHERE typname = 'task_status') THEN
-                        CREATE TYPE task_status AS ENUM ('new', 'work', 'done', 'deny');
-                    end if;
-                END$$;
-            
-                CREATE TABLE IF NOT EXISTS TC_Tasks
-                (
-                    index           INTEGER         GENERATED ALWAYS AS IDENTITY,
-                    uuid            UUID            DEFAULT gen_random_uuid(),
-                    type            TEXT            NOT NULL,
-                    payload         JSON            DEFAULT '{}'::json,
-                    status          task_status     DEFAULT 'new',
-                    created_at      BIGINT          DEFAULT EXTRACT(EPOCH FROM NOW())::BIGINT,
-                    owner           TEXT            NOT NULL,
-                    description     TEXT,
-                    locked          BOOLEAN         DEFAULT FALSE,
-                    handler_name      TEXT            NOT NULL
-                );
-            
-                -- locked prevent update script
-                CREATE OR REPLACE FUNCTION prevent_update_if_locked()
-                RETURNS TRIGGER AS $$
-                BEGIN
-                    IF OLD.locked = TRUE AND NEW.locked != FALSE THEN
-                        RAISE EXCEPTION 'Row locked';
-                    END IF;
-                    RETURN NEW;
-                END;
-                $$ LANGUAGE plpgsql;
-            
-                -- trigger
-                DROP TRIGGER IF EXISTS trg_prevent_update_if_locked ON TC_Tasks;
-                CREATE TRIGGER trg_prevent_update_if_locked
-                    BEFORE UPDATE ON TC_Tasks
-                    FOR EACH ROW
-                EXECUTE FUNCTION prevent_update_if_locked();
-            """)) {
-                stmt.executeUpdate();
-            }
+        try {
+            store.prepare();
         } catch (SQLException e) {
             throw new TaskConveyorException(e.getMessage());
         }
@@ -269,4 +722,249 @@ public class TaskConveyor {
     public String getHandlerName() {
         return handlerName;
     }
+
+    public String getNodeId() {
+        return leases.getNodeId();
+    }
+
+    public WorkerMode getWorkerMode() {
+        return workerMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Map<String, TypeStats> getTypeStats() {
+        return scheduler.stats();
+    }
+
+    // current limit of the type, -1 when unbounded or not registered
+    public int getConcurrencyLimit(String type) {
+        return scheduler.limit(type);
+    }
+
+    public PrefetchStats getPrefetchStats() {
+        return prefetch.stats();
+    }
+
+    // events raised but not yet handed to the EventsExecutor, 0 without async events
+    public int getQueuedEvents() {
+        return events == null ? 0 : events.queued();
+    }
+
+    public long getDroppedLogEvents() {
+        return logging.getDroppedEvents();
+    }
+
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    public PoolStats getPoolStats() {
+        if (store instanceof PostgresTaskStore postgres) {
+            return postgres.getPoolStats();
+        }
+        return new PoolStats(0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static class Builder {
+        private final String handlerName;
+        private final DatabaseConfig databaseConfig;
+        private final TaskStore store;
+        private Path loggingFolder;
+        private LoggingOptions loggingOptions;
+        private EventDispatchOptions eventOptions;
+        private Path journalFolder;
+        private int workerThreads = -1;
+        private boolean autoDone = false;
+        private WorkerMode workerMode;
+        private int batchSize = 100;
+        private int prefetchMultiplier = 2;
+        private FlushPolicy flushPolicy;
+        private int statusBatchSize = 500;
+        private long statusFlushIntervalMillis = 10;
+        private boolean pushMode = false;
+        private long minFallbackPollMillis = 1_000;
+        private long maxFallbackPollMillis = 30_000;
+        private InetSocketAddress metricsAddress;
+        private Path metricsFile;
+        private Duration metricsFileInterval;
+        private String nodeId;
+        private long leaseMillis = 10_000;
+        private RetentionPolicy retentionPolicy;
+
+        private Builder(String handlerName, DatabaseConfig databaseConfig, TaskStore store) {
+            this.handlerName = handlerName;
+            this.databaseConfig = databaseConfig;
+            this.store = store;
+        }
+
+        public Builder loggingFolder(Path loggingFolder) {
+            this.loggingFolder = loggingFolder;
+            return this;
+        }
+
+        // write the log file from a background thread instead of the calling worker
+        public Builder asyncLogging(LoggingOptions loggingOptions) {
+            this.loggingOptions = loggingOptions;
+            return this;
+        }
+
+        // task ends and poll causes reach the EventsExecutor from dispatcher threads instead of the raising thread
+        public Builder asyncEvents(EventDispatchOptions eventOptions) {
+            this.eventOptions = eventOptions;
+            return this;
+        }
+
+        // binary task journal, readable with ru.tesdev.taskconveyor.journal.JournalCli
+        public Builder journal(Path journalFolder) {
+            this.journalFolder = journalFolder;
+            return this;
+        }
+
+        private TaskJournal openJournal() {
+            if (journalFolder == null) { return null; }
+            try {
+                return new TaskJournal(journalFolder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public Builder workerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        // FIXED when workerThreads > 0 and CACHED for -1 unless set; in VIRTUAL mode workerThreads caps concurrency
+        public Builder workerMode(WorkerMode workerMode) {
+            if (workerMode == WorkerMode.VIRTUAL && !TaskThreadFactory.isVirtualThreadsSupported()) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+            }
+            this.workerMode = workerMode;
+            return this;
+        }
+
+        private WorkerMode resolveWorkerMode() {
+            if (workerMode != null) { return workerMode; }
+            return workerThreads == -1 ? WorkerMode.CACHED : WorkerMode.FIXED;
+        }
+
+        public Builder autoDone(boolean autoDone) {
+            this.autoDone = autoDone;
+            return this;
+        }
+
+        // max rows claimed by a single poll
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) { throw new IllegalArgumentException("Batch size must be positive"); }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        // claimed-but-unfinished tasks are capped at workerThreads * multiplier
+        public Builder prefetchMultiplier(int prefetchMultiplier) {
+            if (prefetchMultiplier < 1) { throw new IllegalArgumentException("Prefetch multiplier must be positive"); }
+            this.prefetchMultiplier = prefetchMultiplier;
+            return this;
+        }
+
+        public Builder statusFlushPolicy(FlushPolicy flushPolicy) {
+            this.flushPolicy = flushPolicy;
+            return this;
+        }
+
+        // GROUP_COMMIT unless set, in-process stores have no round-trip to amortize and default to SYNC
+        private FlushPolicy resolveFlushPolicy() {
+            if (flushPolicy != null) { return flushPolicy; }
+            return store == null || store instanceof PostgresTaskStore ? FlushPolicy.GROUP_COMMIT : FlushPolicy.SYNC;
+        }
+
+        // a batch of completions is written once it reaches batchSize or has waited flushInterval
+        public Builder statusFlush(int batchSize, Duration flushInterval) {
+            if (batchSize < 1 || flushInterval.isNegative()) {
+                throw new IllegalArgumentException("Status batch size must be positive and flush interval non-negative");
+            }
+            this.statusBatchSize = batchSize;
+            this.statusFlushIntervalMillis = flushInterval.toMillis();
+            return this;
+        }
+
+        // poll on LISTEN/NOTIFY wakeups, falling back to a slow poll that backs off while idle
+        public Builder pushMode(boolean pushMode) {
+            this.pushMode = pushMode;
+            return this;
+        }
+
+        public Builder fallbackPollInterval(Duration min, Duration max) {
+            if (min.isNegative() || min.isZero() || max.compareTo(min) < 0) {
+                throw new IllegalArgumentException("Fallback poll interval must be positive and min <= max");
+            }
+            this.minFallbackPollMillis = Math.max(1, min.toMillis());
+            this.maxFallbackPollMillis = Math.max(1, max.toMillis());
+            return this;
+        }
+
+        // recorded as claimed_by on every task this conveyor claims, must be unique per running process
+        public Builder nodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        private String resolveNodeId() {
+            if (nodeId != null) { return nodeId; }
+            return String.format("%s@%d-%s", handlerName, ProcessHandle.current().pid(), UUID.randomUUID().toString().substring(0, 8));
+        }
+
+        // claimed tasks whose lease is not renewed for this long are handed back to new and claimed again
+        public Builder lease(Duration lease) {
+            if (lease.toMillis() < 100) { throw new IllegalArgumentException("Lease must be at least 100ms"); }
+            this.leaseMillis = lease.toMillis();
+            return this;
+        }
+
+        // finished tasks are archived or deleted in the background, see RetentionPolicy
+        public Builder retention(RetentionPolicy retentionPolicy) {
+            this.retentionPolicy = retentionPolicy;
+            return this;
+        }
+
+        // serves GET /metrics in the Prometheus text format
+        public Builder metricsHttp(InetSocketAddress address) {
+            this.metricsAddress = address;
+            return this;
+        }
+
+        // rewrites the file with the Prometheus text format every interval
+        public Builder metricsFile(Path file, Duration interval) {
+            if (interval.isNegative() || interval.isZero()) { throw new IllegalArgumentException("Metrics interval must be positive"); }
+            this.metricsFile = file;
+            this.metricsFileInterval = interval;
+            return this;
+        }
+
+        // the endpoint and the file can both be configured, each gets its own exporter
+        private List<MetricsExporter> openMetricsExporters(MetricsRegistry metrics) {
+            List<MetricsExporter> exporters = new ArrayList<>(2);
+            if (metricsAddress != null) {
+                try {
+                    exporters.add(MetricsExporter.http(metrics, handlerName, metricsAddress));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (metricsFile != null) {
+                exporters.add(MetricsExporter.file(metrics, handlerName, metricsFile, metricsFileInterval));
+            }
+            return exporters;
+        }
+
+        public TaskConveyor build() {
+            if (resolveWorkerMode() == WorkerMode.FIXED && workerThreads < 1) {
+                throw new IllegalArgumentException("FIXED worker mode requires a positive workerThreads");
+            }
+            return new TaskConveyor(this);
+        }
+    }
 }
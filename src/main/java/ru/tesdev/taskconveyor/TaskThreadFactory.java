@@ -3,16 +3,48 @@ package ru.tesdev.taskconveyor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class TaskThreadFactory implements ThreadFactory {
+    // resolved reflectively so the library still targets Java 17; null when running on an older JVM
+    private static final @Nullable Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final @Nullable Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(java.util.concurrent.Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final @Nullable Method UNSTARTED = findMethod("java.lang.Thread$Builder", "unstarted", Runnable.class);
+
     private final String poolName;
+    private final boolean virtual;
     private final AtomicInteger threadCount = new AtomicInteger(1);
 
     public TaskThreadFactory(String poolName) {
+        this(poolName, false);
+    }
+
+    public TaskThreadFactory(String poolName, boolean virtual) {
+        if (virtual && !isVirtualThreadsSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
         this.poolName = poolName;
+        this.virtual = virtual;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null && UNSTARTED != null;
+    }
+
+    // one new virtual thread per submitted task, named like the platform pools
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String poolName) {
+        TaskThreadFactory factory = new TaskThreadFactory(poolName, true);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
     }
 
     @Override
@@ -27,8 +59,32 @@ public class TaskThreadFactory implements ThreadFactory {
             }
         };
 
-        Thread t = new Thread(wrapped);
+        Thread t = virtual ? newVirtualThread(wrapped) : new Thread(wrapped);
         t.setName(poolName+"-" + id);
         return t;
     }
+
+    private static Thread newVirtualThread(Runnable r) {
+        try {
+            return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), r);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual thread", e);
+        }
+    }
+
+    private static @Nullable Method findMethod(String owner, String name, Class<?>... parameterTypes) {
+        try {
+            return findMethod(Class.forName(owner), name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable Method findMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
+        try {
+            return owner.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,7 @@
+package ru.tesdev.taskconveyor;
+
+import org.slf4j.Logger;
+
+public interface TypedTaskExecutor<T> {
+    void execute(Task task, T payload, Logger logger);
+}
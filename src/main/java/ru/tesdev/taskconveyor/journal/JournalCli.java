@@ -0,0 +1,165 @@
+package ru.tesdev.taskconveyor.journal;
+
+import ru.tesdev.taskconveyor.metrics.LatencyHistogram;
+import ru.tesdev.taskconveyor.types.HistogramSnapshot;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// java -cp TaskConveyor.jar ru.tesdev.taskconveyor.journal.JournalCli <replay|histogram> <segment|folder>
+//      [--uuid <uuid>] [--type <type>] [--from <ISO instant>] [--to <ISO instant>]
+public class JournalCli {
+    private static final String USAGE = "Usage: JournalCli <replay|histogram> <segment|folder> "
+            + "[--uuid <uuid>] [--type <type>] [--from <ISO instant>] [--to <ISO instant>]";
+
+    private final List<Path> segments;
+    private final Map<Integer, String> types;
+    private UUID uuid;
+    private Integer typeId;
+    private long fromNanos = Long.MIN_VALUE;
+    private long toNanos = Long.MAX_VALUE;
+
+    private JournalCli(Path target) throws IOException {
+        Path folder = Files.isDirectory(target) ? target : target.toAbsolutePath().getParent();
+        this.segments = Files.isDirectory(target) ? JournalReader.listSegments(target) : List.of(target);
+        this.types = JournalReader.readTypes(folder);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+        }
+        JournalCli cli = new JournalCli(Path.of(args[1]));
+        for (int i = 2; i < args.length; i += 2) {
+            // a flag without its value would otherwise run the command unfiltered
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i + 1];
+            try {
+                cli.option(args[i], value);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                System.err.println("Invalid value for " + args[i] + ": " + value);
+                usage();
+            }
+        }
+        switch (args[0]) {
+            case "replay" -> cli.replay(System.out);
+            case "histogram" -> cli.histogram(System.out);
+            default -> usage();
+        }
+    }
+
+    private void option(String flag, String value) {
+        switch (flag) {
+            case "--uuid" -> uuid = UUID.fromString(value);
+            case "--type" -> typeId = types.entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(value))
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElse(-1);
+            case "--from" -> fromNanos = toNanos(Instant.parse(value));
+            case "--to" -> toNanos = toNanos(Instant.parse(value));
+            default -> usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    private boolean matches(JournalReader reader) {
+        long timestamp = reader.getTimestampNanos();
+        if (timestamp < fromNanos || timestamp >= toNanos) { return false; }
+        if (typeId != null && reader.getTypeId() != typeId && reader.getTypeId() != JournalFormat.UNKNOWN_TYPE) { return false; }
+        return uuid == null || (reader.getUuidMsb() == uuid.getMostSignificantBits()
+                && reader.getUuidLsb() == uuid.getLeastSignificantBits());
+    }
+
+    private void replay(PrintStream out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        for (Path segment : segments) {
+            try (JournalReader reader = new JournalReader(segment)) {
+                while (reader.next()) {
+                    if (!matches(reader)) { continue; }
+                    long timestamp = reader.getTimestampNanos();
+                    writer.write(Instant.ofEpochSecond(0, timestamp).toString());
+                    writer.write(' ');
+                    writer.write(reader.getUuid().toString());
+                    writer.write(' ');
+                    writer.write(typeName(reader.getTypeId()));
+                    writer.write(' ');
+                    writer.write(reader.getStatus().name());
+                    writer.write(" thread=");
+                    writer.write(Long.toString(reader.getThreadId()));
+                    writer.write('\n');
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    // execution latency per type: from the WORK record to the DONE/DENY record of the same task
+    private void histogram(PrintStream out) throws IOException {
+        Map<UUID, long[]> started = new HashMap<>();
+        Map<Integer, LatencyHistogram> histograms = new TreeMap<>();
+        long records = 0;
+        long start = System.nanoTime();
+        for (Path segment : segments) {
+            try (JournalReader reader = new JournalReader(segment)) {
+                while (reader.next()) {
+                    records++;
+                    if (!matches(reader)) { continue; }
+                    TaskStatus status = reader.getStatus();
+                    if (status == TaskStatus.WORK) {
+                        if (typeId == null || reader.getTypeId() == typeId) {
+                            started.put(reader.getUuid(), new long[]{reader.getTimestampNanos(), reader.getTypeId()});
+                        }
+                    } else if (status == TaskStatus.DONE || status == TaskStatus.DENY) {
+                        long[] begin = started.remove(reader.getUuid());
+                        if (begin != null) {
+                            histograms.computeIfAbsent((int) begin[1], id -> new LatencyHistogram())
+                                    .record(reader.getTimestampNanos() - begin[0]);
+                        }
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        out.printf("%-24s %10s %12s %12s %12s %12s%n", "type", "count", "p50 us", "p90 us", "p99 us", "max us");
+        List<Map.Entry<Integer, LatencyHistogram>> rows = new ArrayList<>(histograms.entrySet());
+        for (Map.Entry<Integer, LatencyHistogram> row : rows) {
+            HistogramSnapshot h = row.getValue().snapshot();
+            out.printf("%-24s %10d %12.1f %12.1f %12.1f %12.1f%n",
+                    typeName(row.getKey()), h.count(),
+                    h.p50() / 1000.0, h.p90() / 1000.0,
+                    h.p99() / 1000.0, h.max() / 1000.0);
+        }
+        out.printf("%d records scanned in %d ms, %d tasks without completion%n",
+                records, elapsed / 1_000_000, started.size());
+    }
+
+    private String typeName(int id) {
+        if (id == JournalFormat.UNKNOWN_TYPE) { return "-"; }
+        return types.getOrDefault(id, "#" + id);
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
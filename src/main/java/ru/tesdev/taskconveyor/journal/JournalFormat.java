@@ -0,0 +1,26 @@
+package ru.tesdev.taskconveyor.journal;
+
+// Segment layout: 16 byte header followed by fixed-width little-endian records.
+// A record with timestamp 0 marks the unwritten tail of a segment.
+final class JournalFormat {
+    static final int MAGIC = 0x54434A31; // "TCJ1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    static final int RECORD_SIZE = 40;
+    static final int TIMESTAMP = 0;   // long, epoch nanos
+    static final int UUID_MSB = 8;    // long
+    static final int UUID_LSB = 16;   // long
+    static final int THREAD_ID = 24;  // long
+    static final int TYPE_ID = 32;    // int, see the types dictionary file
+    static final int STATUS = 36;     // byte, TaskStatus ordinal
+
+    // status changes written without the task type at hand
+    static final int UNKNOWN_TYPE = 0;
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".tcj";
+    static final String TYPES_FILE = "types.idx";
+
+    private JournalFormat() { }
+}
@@ -0,0 +1,92 @@
+package ru.tesdev.taskconveyor.journal;
+
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Sequential cursor over one journal segment, reads straight from the mapping without allocating per record
+public class JournalReader implements AutoCloseable {
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final MappedByteBuffer buffer;
+    private final int limit;
+    private int position = JournalFormat.HEADER_SIZE - JournalFormat.RECORD_SIZE;
+
+    public JournalReader(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < JournalFormat.HEADER_SIZE || buffer.getInt(0) != JournalFormat.MAGIC) {
+            throw new IOException(String.format("%s is not a task journal segment", segment));
+        }
+        if (buffer.getInt(4) != JournalFormat.VERSION || buffer.getInt(8) != JournalFormat.RECORD_SIZE) {
+            throw new IOException(String.format("Unsupported journal version %d in %s", buffer.getInt(4), segment));
+        }
+        this.limit = buffer.capacity() - JournalFormat.RECORD_SIZE;
+    }
+
+    public boolean next() {
+        int candidate = position + JournalFormat.RECORD_SIZE;
+        if (candidate > limit || buffer.getLong(candidate + JournalFormat.TIMESTAMP) == 0) {
+            return false;
+        }
+        position = candidate;
+        return true;
+    }
+
+    public long getTimestampNanos() { return buffer.getLong(position + JournalFormat.TIMESTAMP); }
+    public long getUuidMsb() { return buffer.getLong(position + JournalFormat.UUID_MSB); }
+    public long getUuidLsb() { return buffer.getLong(position + JournalFormat.UUID_LSB); }
+    public UUID getUuid() { return new UUID(getUuidMsb(), getUuidLsb()); }
+    public long getThreadId() { return buffer.getLong(position + JournalFormat.THREAD_ID); }
+    public int getTypeId() { return buffer.getInt(position + JournalFormat.TYPE_ID); }
+    public TaskStatus getStatus() { return STATUSES[buffer.get(position + JournalFormat.STATUS)]; }
+
+    @Override
+    public void close() { }
+
+    public static List<Path> listSegments(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) { return List.of(); }
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(JournalFormat.SEGMENT_PREFIX) && name.endsWith(JournalFormat.SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(JournalFormat.SEGMENT_PREFIX.length(),
+                name.length() - JournalFormat.SEGMENT_SUFFIX.length()));
+    }
+
+    // type id -> type name, read from the dictionary next to the segments
+    public static Map<Integer, String> readTypes(Path folder) throws IOException {
+        Map<Integer, String> types = new HashMap<>();
+        Path file = folder.resolve(JournalFormat.TYPES_FILE);
+        if (!Files.exists(file)) { return types; }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                types.put(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+            }
+        }
+        return types;
+    }
+}
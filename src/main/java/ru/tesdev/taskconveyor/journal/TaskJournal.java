@@ -0,0 +1,145 @@
+package ru.tesdev.taskconveyor.journal;
+
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Append-only binary record of task transitions, written through memory-mapped segments
+public class TaskJournal implements AutoCloseable {
+    private final Path folder;
+    private final int segmentSize;
+    private final Map<String, Integer> typeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTypeId = new AtomicInteger(1);
+
+    private final long baseEpochNanos = System.currentTimeMillis() * 1_000_000L;
+    private final long baseNanoTime = System.nanoTime();
+
+    private volatile Segment segment;
+    private boolean closed = false;
+
+    public TaskJournal(Path folder) throws IOException {
+        this(folder, 64 * 1024 * 1024);
+    }
+
+    public TaskJournal(Path folder, int segmentSize) throws IOException {
+        if (segmentSize < JournalFormat.HEADER_SIZE + JournalFormat.RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size too small");
+        }
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(folder);
+        loadTypes();
+        this.segment = openSegment();
+    }
+
+    public void append(UUID uuid, @Nullable String type, TaskStatus status) {
+        long timestamp = baseEpochNanos + (System.nanoTime() - baseNanoTime);
+        int typeId = typeId(type);
+        long threadId = Thread.currentThread().getId();
+        while (true) {
+            Segment current = segment;
+            if (current == null) { return; }
+            long offset = current.position.getAndAdd(JournalFormat.RECORD_SIZE);
+            if (offset + JournalFormat.RECORD_SIZE <= segmentSize) {
+                int at = (int) offset;
+                MappedByteBuffer buf = current.buffer;
+                buf.putLong(at + JournalFormat.UUID_MSB, uuid.getMostSignificantBits());
+                buf.putLong(at + JournalFormat.UUID_LSB, uuid.getLeastSignificantBits());
+                buf.putLong(at + JournalFormat.THREAD_ID, threadId);
+                buf.putInt(at + JournalFormat.TYPE_ID, typeId);
+                buf.put(at + JournalFormat.STATUS, (byte) status.ordinal());
+                // written last, readers treat a zero timestamp as the end of the segment
+                buf.putLong(at + JournalFormat.TIMESTAMP, timestamp);
+                return;
+            }
+            roll(current);
+        }
+    }
+
+    private int typeId(@Nullable String type) {
+        if (type == null) { return JournalFormat.UNKNOWN_TYPE; }
+        Integer id = typeIds.get(type);
+        return id != null ? id : registerType(type);
+    }
+
+    private synchronized int registerType(String type) {
+        Integer id = typeIds.get(type);
+        if (id != null) { return id; }
+        int newId = nextTypeId.getAndIncrement();
+        try {
+            Files.writeString(folder.resolve(JournalFormat.TYPES_FILE), newId + "\t" + type + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        typeIds.put(type, newId);
+        return newId;
+    }
+
+    private void loadTypes() throws IOException {
+        for (Map.Entry<Integer, String> entry : JournalReader.readTypes(folder).entrySet()) {
+            typeIds.put(entry.getValue(), entry.getKey());
+            nextTypeId.set(Math.max(nextTypeId.get(), entry.getKey() + 1));
+        }
+    }
+
+    private synchronized void roll(Segment full) {
+        if (segment != full || closed) { return; }
+        try {
+            full.buffer.force();
+            segment = openSegment();
+        } catch (IOException e) {
+            segment = null;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        List<Path> existing = JournalReader.listSegments(folder);
+        long number = existing.isEmpty() ? 0 : JournalReader.segmentNumber(existing.get(existing.size() - 1)) + 1;
+        Path file = folder.resolve(String.format("%s%016d%s", JournalFormat.SEGMENT_PREFIX, number, JournalFormat.SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, JournalFormat.MAGIC);
+            buffer.putInt(4, JournalFormat.VERSION);
+            buffer.putInt(8, JournalFormat.RECORD_SIZE);
+            return new Segment(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Segment current = segment;
+        segment = null;
+        if (current != null) {
+            current.buffer.force();
+        }
+    }
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicLong position = new AtomicLong(JournalFormat.HEADER_SIZE);
+
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.tesdev.taskconveyor.metrics;
+
+import ru.tesdev.taskconveyor.types.HistogramSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent log-linear histogram: 16 linear sub-buckets per power of two (about 6% relative error), bucket counters
+// striped by thread so workers rarely share a cache line. Recording never allocates.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) { value = 0; }
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + index(value));
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = counts.get(stripe * BUCKETS + i);
+                merged[i] += count;
+                total += count;
+            }
+        }
+        long maxValue = max.get();
+        return new HistogramSnapshot(total, sum.sum(),
+                percentile(merged, total, maxValue, 0.5),
+                percentile(merged, total, maxValue, 0.9),
+                percentile(merged, total, maxValue, 0.99),
+                percentile(merged, total, maxValue, 0.999),
+                maxValue);
+    }
+
+    private static long percentile(long[] counts, long total, long max, double quantile) {
+        if (total == 0) { return 0; }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) { return (int) value; }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    private static long upperBound(int index) {
+        int exponent = index / SUB_COUNT;
+        int sub = index % SUB_COUNT;
+        if (exponent == 0) { return sub; }
+        return ((long) (sub | SUB_COUNT) << (exponent - 1)) + (1L << (exponent - 1)) - 1;
+    }
+}
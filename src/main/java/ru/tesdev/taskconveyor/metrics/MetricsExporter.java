@@ -0,0 +1,155 @@
+package ru.tesdev.taskconveyor.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.tesdev.taskconveyor.types.HistogramSnapshot;
+import ru.tesdev.taskconveyor.types.MetricsSnapshot;
+import ru.tesdev.taskconveyor.types.TypeMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Publishes registry snapshots in the Prometheus text format, over HTTP (GET /metrics) or into a file
+public class MetricsExporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ScheduledExecutorService writer;
+
+    private MetricsExporter(HttpServer server, ScheduledExecutorService writer) {
+        this.server = server;
+        this.writer = writer;
+    }
+
+    public static MetricsExporter http(MetricsRegistry registry, String handlerName, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = render(handlerName, registry.snapshot()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+        return new MetricsExporter(server, null);
+    }
+
+    // the file is replaced atomically so readers never see a partial snapshot
+    public static MetricsExporter file(MetricsRegistry registry, String handlerName, Path file, Duration interval) {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskConveyor-metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(() -> {
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(temp, render(handlerName, registry.snapshot()), StandardCharsets.UTF_8);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // a failed write must not cancel the schedule, the next interval retries
+                logger.error("Unable to write metrics to {}: {}", file, e.getMessage());
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        return new MetricsExporter(null, writer);
+    }
+
+    public static String render(String handlerName, MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder(4096);
+        String handler = "handler=\"" + escape(handlerName) + "\"";
+
+        gauge(out, "taskconveyor_uptime_seconds", handler, snapshot.uptimeMillis() / 1000.0);
+        counter(out, "taskconveyor_polls_total", handler, snapshot.polls());
+        counter(out, "taskconveyor_reclaimed_total", handler, snapshot.reclaimed());
+        counter(out, "taskconveyor_archived_total", handler, snapshot.archived());
+        counter(out, "taskconveyor_purged_total", handler, snapshot.purged());
+        summary(out, "taskconveyor_poll_duration_seconds", handler, snapshot.pollDuration(), true);
+        summary(out, "taskconveyor_poll_rows", handler, snapshot.rowsPerPoll(), false);
+        summary(out, "taskconveyor_db_write_seconds", handler, snapshot.dbWriteLatency(), true);
+        counter(out, "taskconveyor_events_dropped_total", handler, snapshot.droppedEvents());
+        summary(out, "taskconveyor_event_dispatch_lag_seconds", handler, snapshot.eventDispatchLag(), true);
+
+        Map<String, TypeMetrics> types = new TreeMap<>(snapshot.types());
+        out.append("# TYPE taskconveyor_tasks_total counter\n");
+        types.forEach((type, metrics) -> {
+            String labels = handler + ",type=\"" + escape(type) + "\"";
+            sample(out, "taskconveyor_tasks_total", labels + ",outcome=\"claimed\"", metrics.claimed());
+            sample(out, "taskconveyor_tasks_total", labels + ",outcome=\"done\"", metrics.done());
+            sample(out, "taskconveyor_tasks_total", labels + ",outcome=\"deny\"", metrics.denied());
+            sample(out, "taskconveyor_tasks_total", labels + ",outcome=\"failed\"", metrics.failed());
+            sample(out, "taskconveyor_tasks_total", labels + ",outcome=\"timeout\"", metrics.timedOut());
+        });
+        types.forEach((type, metrics) -> summary(out, "taskconveyor_queue_latency_seconds",
+                handler + ",type=\"" + escape(type) + "\"", metrics.queueLatency(), true));
+        types.forEach((type, metrics) -> summary(out, "taskconveyor_execution_seconds",
+                handler + ",type=\"" + escape(type) + "\"", metrics.executionTime(), true));
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String labels, double value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        sample(out, name, labels, value);
+    }
+
+    private static void counter(StringBuilder out, String name, String labels, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        sample(out, name, labels, value);
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, HistogramSnapshot histogram, boolean nanos) {
+        double scale = nanos ? 1e9 : 1;
+        if (out.indexOf("# TYPE " + name + " ") < 0) {
+            out.append("# TYPE ").append(name).append(" summary\n");
+        }
+        sample(out, name, labels + ",quantile=\"0.5\"", histogram.p50() / scale);
+        sample(out, name, labels + ",quantile=\"0.9\"", histogram.p90() / scale);
+        sample(out, name, labels + ",quantile=\"0.99\"", histogram.p99() / scale);
+        sample(out, name, labels + ",quantile=\"0.999\"", histogram.p999() / scale);
+        sample(out, name, labels + ",quantile=\"1\"", histogram.max() / scale);
+        sample(out, name + "_sum", labels, histogram.sum() / scale);
+        sample(out, name + "_count", labels, histogram.count());
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+    }
+}
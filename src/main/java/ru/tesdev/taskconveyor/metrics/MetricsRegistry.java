@@ -0,0 +1,131 @@
+package ru.tesdev.taskconveyor.metrics;
+
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.types.HistogramSnapshot;
+import ru.tesdev.taskconveyor.types.MetricsSnapshot;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+import ru.tesdev.taskconveyor.types.TypeMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process counters and histograms of one conveyor, cheap enough to stay on in production
+public class MetricsRegistry {
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, TypeCounters> types = new ConcurrentHashMap<>();
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+    private final LatencyHistogram pollDuration = new LatencyHistogram();
+    private final LatencyHistogram rowsPerPoll = new LatencyHistogram();
+    private final LatencyHistogram dbWriteLatency = new LatencyHistogram();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LatencyHistogram eventDispatchLag = new LatencyHistogram();
+
+    public void recordPoll(long durationNanos, int rows) {
+        polls.increment();
+        pollDuration.record(durationNanos);
+        rowsPerPoll.record(rows);
+    }
+
+    // created_at is stored in whole seconds, so queue latency below a second is only approximate
+    public void recordClaim(String type, long createdAtSeconds) {
+        TypeCounters counters = type(type);
+        counters.claimed.increment();
+        long waitedMillis = System.currentTimeMillis() - createdAtSeconds * 1000;
+        counters.queueLatency.record(waitedMillis * 1_000_000);
+    }
+
+    public void recordExecution(String type, long durationNanos, boolean failed) {
+        TypeCounters counters = type(type);
+        counters.executionTime.record(durationNanos);
+        if (failed) {
+            counters.failed.increment();
+        }
+    }
+
+    // executions interrupted by the type's timeout, also counted as failed
+    public void recordTimeout(String type) {
+        type(type).timedOut.increment();
+    }
+
+    public void recordCompletion(@Nullable String type, TaskStatus status) {
+        if (type == null) { return; }
+        if (status == TaskStatus.DONE) {
+            type(type).done.increment();
+        } else if (status == TaskStatus.DENY) {
+            type(type).denied.increment();
+        }
+    }
+
+    // tasks returned to new by the lease reaper
+    public void recordReclaimed(int tasks) {
+        reclaimed.add(tasks);
+    }
+
+    // finished tasks moved to the archive or deleted by retention
+    public void recordRetention(int archived, int purged) {
+        this.archived.add(archived);
+        this.purged.add(purged);
+    }
+
+    public void recordDbWrite(long durationNanos) {
+        dbWriteLatency.record(durationNanos);
+    }
+
+    // time from raising an event to handing it to the listener
+    public void recordEventDispatch(long lagNanos) {
+        eventDispatchLag.record(lagNanos);
+    }
+
+    public void recordDroppedEvent() {
+        droppedEvents.increment();
+    }
+
+    public HistogramSnapshot dbWriteLatency() {
+        return dbWriteLatency.snapshot();
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, TypeMetrics> typeMetrics = new HashMap<>();
+        types.forEach((type, counters) -> typeMetrics.put(type, new TypeMetrics(
+                counters.claimed.sum(),
+                counters.done.sum(),
+                counters.denied.sum(),
+                counters.failed.sum(),
+                counters.timedOut.sum(),
+                counters.queueLatency.snapshot(),
+                counters.executionTime.snapshot())));
+        return new MetricsSnapshot(
+                System.currentTimeMillis() - startedAt,
+                polls.sum(),
+                reclaimed.sum(),
+                archived.sum(),
+                purged.sum(),
+                pollDuration.snapshot(),
+                rowsPerPoll.snapshot(),
+                dbWriteLatency.snapshot(),
+                droppedEvents.sum(),
+                eventDispatchLag.snapshot(),
+                typeMetrics);
+    }
+
+    private TypeCounters type(String type) {
+        TypeCounters counters = types.get(type);
+        return counters != null ? counters : types.computeIfAbsent(type, t -> new TypeCounters());
+    }
+
+    private static class TypeCounters {
+        private final LongAdder claimed = new LongAdder();
+        private final LongAdder done = new LongAdder();
+        private final LongAdder denied = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram executionTime = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,316 @@
+package ru.tesdev.taskconveyor.services;
+
+import ru.tesdev.taskconveyor.types.LogOverflowPolicy;
+import ru.tesdev.taskconveyor.types.LoggingOptions;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Multi-producer ring buffer of preallocated events drained by one writer thread into a FileChannel.
+// Producers only copy primitives and existing String references into a slot, formatting happens on the writer.
+class AsyncLogWriter implements AutoCloseable {
+    static final byte EXECUTE = 1;
+    static final byte MARK = 2;
+    static final byte POLLING_STARTED = 3;
+    static final byte POLLING_SHUTDOWN = 4;
+    static final byte UNHANDLED_TYPE = 5;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // a producer blocked on a full ring spins this often before it parks between checks
+    private static final int FULL_SPINS = 100;
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final Event[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    private final LoggingOptions options;
+    private final Supplier<Path> currentFile;
+    private final Runnable rotate;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private Path channelFile;
+    private long fileBytes;
+    private long fileOpenedAt;
+    private long offsetMillis;
+    private long offsetValidUntil;
+
+    AsyncLogWriter(LoggingOptions options, Supplier<Path> currentFile, Runnable rotate) {
+        this.options = options;
+        this.currentFile = currentFile;
+        this.rotate = rotate;
+        this.slots = new Event[options.getBufferSize()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Event();
+        }
+        this.published = new AtomicLongArray(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            published.set(i, -1);
+        }
+        this.mask = slots.length - 1;
+        this.writer = new Thread(this::run, "TaskConveyor-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    void append(byte kind, long msb, long lsb, String text, TaskStatus status) {
+        long sequence;
+        int spins = 0;
+        while (true) {
+            sequence = head.get();
+            if (sequence - tail >= slots.length) {
+                if (options.getOverflowPolicy() == LogOverflowPolicy.DROP || !running) {
+                    dropped.increment();
+                    return;
+                }
+                // a slow disk must not pin every blocked worker at full CPU
+                if (++spins < FULL_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                }
+                continue;
+            }
+            if (head.compareAndSet(sequence, sequence + 1)) { break; }
+        }
+        int index = (int) (sequence & mask);
+        Event event = slots[index];
+        event.kind = kind;
+        event.timeMillis = System.currentTimeMillis();
+        event.thread = Thread.currentThread().getName();
+        event.msb = msb;
+        event.lsb = lsb;
+        event.text = text;
+        event.status = status;
+        published.lazySet(index, sequence);
+    }
+
+    void append(byte kind, UUID uuid, String text, TaskStatus status) {
+        append(kind, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), text, status);
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void run() {
+        while (true) {
+            int drained = drain();
+            if (drained > 0) {
+                flush();
+            } else if (!running) {
+                if (head.get() == tail) { break; }
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeChannel();
+    }
+
+    private int drain() {
+        int drained = 0;
+        long sequence = tail;
+        while (published.get((int) (sequence & mask)) == sequence) {
+            Event event = slots[(int) (sequence & mask)];
+            format(event);
+            event.thread = null;
+            event.text = null;
+            sequence++;
+            tail = sequence;
+            drained++;
+        }
+        return drained;
+    }
+
+    private void format(Event event) {
+        if (buffer.remaining() < 512) {
+            flush();
+        }
+        put('[');
+        putTime(event.timeMillis);
+        put(']');
+        put(' ');
+        put('(');
+        putString(event.thread);
+        put(')');
+        put(' ');
+        switch (event.kind) {
+            case EXECUTE -> {
+                putString("Execute task ");
+                putUuid(event.msb, event.lsb);
+                putString(" Type ");
+                putString(event.text);
+            }
+            case MARK -> {
+                putString("Task ");
+                putUuid(event.msb, event.lsb);
+                putString(" marked as ");
+                putString(event.status.name());
+            }
+            case POLLING_STARTED -> putString("Polling started");
+            case POLLING_SHUTDOWN -> putString("Polling shutdown");
+            case UNHANDLED_TYPE -> {
+                putString("Unhandled type ");
+                putString(event.text);
+                putString(" in task ");
+                putUuid(event.msb, event.lsb);
+            }
+            default -> putString("Unknown event");
+        }
+        put('\n');
+    }
+
+    private void flush() {
+        if (buffer.position() == 0) { return; }
+        buffer.flip();
+        try {
+            FileChannel ch = channel();
+            while (buffer.hasRemaining()) {
+                fileBytes += ch.write(buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeChannel();
+        }
+        buffer.clear();
+        if (needsRotation()) {
+            rotate.run();
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        Path file = currentFile.get();
+        if (channel == null || !file.equals(channelFile)) {
+            closeChannel();
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channelFile = file;
+            fileBytes = channel.size();
+            fileOpenedAt = System.currentTimeMillis();
+        }
+        return channel;
+    }
+
+    private boolean needsRotation() {
+        if (channel == null) { return false; }
+        if (options.getRotateBytes() > 0 && fileBytes >= options.getRotateBytes()) { return true; }
+        return options.getRotateIntervalMillis() > 0
+                && System.currentTimeMillis() - fileOpenedAt >= options.getRotateIntervalMillis();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) { }
+            channel = null;
+            channelFile = null;
+        }
+    }
+
+    private void put(char c) {
+        buffer.put((byte) c);
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            putString("null");
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // rare non-ASCII names take the allocating path
+                byte[] bytes = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < bytes.length + 64) { flush(); }
+                buffer.put(bytes, 0, Math.min(bytes.length, buffer.remaining() - 64));
+                return;
+            }
+            if (buffer.remaining() < 64) { flush(); }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void putUuid(long msb, long lsb) {
+        putHex(msb >>> 32, 8);
+        put('-');
+        putHex(msb >>> 16, 4);
+        put('-');
+        putHex(msb, 4);
+        put('-');
+        putHex(lsb >>> 48, 4);
+        put('-');
+        putHex(lsb, 12);
+    }
+
+    private void putHex(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put(HEX[(int) (value >>> (i * 4)) & 0xF]);
+        }
+    }
+
+    private void putTime(long epochMillis) {
+        if (epochMillis >= offsetValidUntil) {
+            Instant now = Instant.ofEpochMilli(epochMillis);
+            offsetMillis = ZoneId.systemDefault().getRules().getOffset(now).getTotalSeconds() * 1000L;
+            offsetValidUntil = epochMillis - Math.floorMod(epochMillis, 60_000L) + 60_000L;
+        }
+        long ofDay = Math.floorMod(epochMillis + offsetMillis, 86_400_000L);
+        putDigits(ofDay / 3_600_000, 2);
+        put(':');
+        putDigits(ofDay / 60_000 % 60, 2);
+        put(':');
+        putDigits(ofDay / 1000 % 60, 2);
+        put(':');
+        putDigits(ofDay % 1000, 3);
+    }
+
+    private void putDigits(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            long divisor = i == 0 ? 1 : i == 1 ? 10 : 100;
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Event {
+        private byte kind;
+        private long timeMillis;
+        private String thread;
+        private long msb;
+        private long lsb;
+        private String text;
+        private TaskStatus status;
+    }
+}
@@ -0,0 +1,285 @@
+package ru.tesdev.taskconveyor.services;
+
+import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.PoolStats;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConnectionPool implements AutoCloseable {
+    // connections idle for less than this are handed out without a validation round-trip
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final DatabaseConfig config;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ScheduledExecutorService housekeeper;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private int total;
+    private int waiters;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private volatile long maxAcquireNanos;
+
+    public ConnectionPool(DatabaseConfig config) {
+        this.config = config;
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TaskConveyorPool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, config.getIdleTimeoutMillis() / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeeping, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+
+    public Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getAcquireTimeoutMillis());
+        while (true) {
+            PooledConnection pooled = take(deadline);
+            if (pooled == null) {
+                pooled = new PooledConnection(open());
+            } else if (System.nanoTime() - pooled.lastUsed > VALIDATE_AFTER_IDLE_NANOS && !isValid(pooled.raw)) {
+                discard(pooled);
+                continue;
+            }
+            recordAcquire(System.nanoTime() - start);
+            return pooled.proxy();
+        }
+    }
+
+    // returns an idle connection, or null after reserving a slot for a new one
+    private PooledConnection take(long deadline) throws SQLException {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed.get()) { throw new SQLException("Connection pool is closed"); }
+                PooledConnection pooled = idle.pollFirst();
+                if (pooled != null) { return pooled; }
+                if (total < config.getMaxPoolSize()) {
+                    total++;
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    acquireTimeouts.increment();
+                    throw new SQLTransientConnectionException(String.format(
+                            "Timed out after %d ms waiting for a connection (max pool size %d)",
+                            config.getAcquireTimeoutMillis(), config.getMaxPoolSize()));
+                }
+                waiters++;
+                try {
+                    available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection");
+                } finally {
+                    waiters--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection open() throws SQLException {
+        try {
+            return DriverManager.getConnection(config.getConnectUrl(), config.getUser(), config.getPassword());
+        } catch (SQLException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordAcquire(long nanos) {
+        acquireCount.increment();
+        acquireNanos.add(nanos);
+        if (nanos > maxAcquireNanos) { maxAcquireNanos = nanos; }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        try {
+            if (pooled.raw.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.raw.getAutoCommit()) {
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+            return;
+        }
+        pooled.lastUsed = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed.get()) {
+                total--;
+                closeQuietly(pooled.raw);
+                return;
+            }
+            idle.addFirst(pooled);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        closeQuietly(pooled.raw);
+        release();
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeeping() {
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        long now = System.nanoTime();
+        int missing;
+        lock.lock();
+        try {
+            // oldest connections sit at the tail because returns go to the head
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total > config.getMinPoolSize()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsed < idleTimeout) { break; }
+                it.remove();
+                total--;
+                closeQuietly(pooled.raw);
+            }
+            missing = closed.get() ? 0 : config.getMinPoolSize() - total;
+            total += Math.max(missing, 0);
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < missing; i++) {
+            try {
+                giveBack(new PooledConnection(open()));
+            } catch (SQLException e) {
+                for (int j = i + 1; j < missing; j++) { release(); }
+                return;
+            }
+        }
+    }
+
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            long count = acquireCount.sum();
+            return new PoolStats(
+                    total - idle.size(),
+                    idle.size(),
+                    waiters,
+                    count,
+                    acquireTimeouts.sum(),
+                    count == 0 ? 0 : acquireNanos.sum() / count,
+                    maxAcquireNanos
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) { return; }
+        housekeeper.shutdownNow();
+        lock.lock();
+        try {
+            for (PooledConnection pooled : idle) {
+                closeQuietly(pooled.raw);
+                total--;
+            }
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) { }
+    }
+
+    private class PooledConnection {
+        private final Connection raw;
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        // close() on the handed out connection returns it to the pool instead of closing the socket
+        private Connection proxy() {
+            AtomicBoolean returned = new AtomicBoolean(false);
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (returned.compareAndSet(false, true)) { giveBack(this); }
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "isClosed":
+                                return returned.get() || raw.isClosed();
+                            case "unwrap":
+                                return raw.unwrap((Class<?>) args[0]);
+                            case "isWrapperFor":
+                                return raw.isWrapperFor((Class<?>) args[0]);
+                            default:
+                                if (returned.get()) { throw new SQLException("Connection already returned to the pool"); }
+                                try {
+                                    return method.invoke(raw, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    });
+        }
+    }
+}
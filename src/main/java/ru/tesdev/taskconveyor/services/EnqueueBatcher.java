@@ -0,0 +1,133 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Coalesces submit() calls from many threads into one insert. A batch is written as soon as the
+// previous one returns, so batches grow with load and a lone submit is not delayed. Submits block
+// once MAX_PENDING_BATCHES batches are waiting, so producers cannot outrun the database unbounded.
+class EnqueueBatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+    private static final int MAX_PENDING_BATCHES = 8;
+
+    private final TaskService service;
+    private final String defaultHandler;
+    private final int maxBatch;
+    private final int maxPending;
+    private final Thread flusher;
+
+    private final Object monitor = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    private boolean closed = false;
+
+    EnqueueBatcher(TaskService service, String defaultHandler, int maxBatch) {
+        this.service = service;
+        this.defaultHandler = defaultHandler;
+        this.maxBatch = maxBatch;
+        this.maxPending = maxBatch * MAX_PENDING_BATCHES;
+        this.flusher = new Thread(this::run, "TaskConveyor-enqueue");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    CompletableFuture<EnqueuedTask> submit(NewTask task) {
+        CompletableFuture<EnqueuedTask> result = new CompletableFuture<>();
+        synchronized (monitor) {
+            try {
+                while (pending.size() >= maxPending && !closed) {
+                    monitor.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(e);
+            }
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Enqueue batcher is closed"));
+            }
+            pending.add(new Pending(task, result));
+            if (pending.size() == 1) {
+                monitor.notifyAll();
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (monitor) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        monitor.wait();
+                    }
+                } catch (InterruptedException e) {
+                    // stops like close(): what is pending is still written, later submits fail at once
+                    logger.warn("Enqueue batcher interrupted, closing");
+                    closed = true;
+                    monitor.notifyAll();
+                }
+                if (pending.isEmpty() && closed) { return; }
+                if (pending.size() <= maxBatch) {
+                    batch = pending;
+                    pending = new ArrayList<>();
+                } else {
+                    List<Pending> head = pending.subList(0, maxBatch);
+                    batch = new ArrayList<>(head);
+                    head.clear();
+                }
+                // wakes submits waiting for room
+                monitor.notifyAll();
+            }
+            write(batch);
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<NewTask> tasks = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            tasks.add(pending.task());
+        }
+        try {
+            List<EnqueuedTask> enqueued = service.enqueue(defaultHandler, tasks);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(enqueued.get(i));
+            }
+        } catch (TaskPayloadException e) {
+            // one payload that cannot be serialized must not fail the tasks batched with it
+            for (Pending pending : batch) {
+                try {
+                    pending.result().complete(service.enqueue(defaultHandler, List.of(pending.task())).get(0));
+                } catch (Exception single) {
+                    pending.result().completeExceptionally(single);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Unable to enqueue {} tasks: {}", batch.size(), e.getMessage());
+            for (Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (monitor) {
+            closed = true;
+            monitor.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Pending(NewTask task, CompletableFuture<EnqueuedTask> result) { }
+}
@@ -0,0 +1,105 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
+import ru.tesdev.taskconveyor.store.TaskStore;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the leases of this node's claimed tasks alive with one heartbeat statement per interval,
+// and returns tasks whose lease ran out (their node is gone) to new
+public class LeaseKeeper implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+    private static final int REAP_BATCH = 1000;
+
+    private final TaskStore store;
+    private final String handlerName;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final MetricsRegistry metrics;
+    private final Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService timer;
+
+    public LeaseKeeper(TaskStore store, String handlerName, String nodeId, long leaseMillis, MetricsRegistry metrics) {
+        this.store = store;
+        this.handlerName = handlerName;
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+        this.metrics = metrics;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void track(int index) {
+        claimed.add(index);
+    }
+
+    public void untrack(int index) {
+        claimed.remove(index);
+    }
+
+    // a lease is renewed three times before it can expire, so a single missed heartbeat costs nothing
+    public synchronized void start() {
+        if (timer != null) { return; }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskConveyor-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long heartbeat = Math.max(1, leaseMillis / 3);
+        long reap = Math.max(250, leaseMillis / 4);
+        timer.scheduleWithFixedDelay(this::heartbeatQuietly, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        timer.scheduleWithFixedDelay(this::reapQuietly, 0, reap, TimeUnit.MILLISECONDS);
+    }
+
+    public int heartbeat() throws SQLException {
+        if (claimed.isEmpty()) { return 0; }
+        return store.renewLeases(nodeId, claimed.toArray(new Integer[0]), leaseMillis);
+    }
+
+    public int reap() throws SQLException {
+        int reaped = store.reclaimExpired(handlerName, REAP_BATCH);
+        if (reaped > 0) {
+            logger.warn("Reclaimed {} tasks with an expired lease", reaped);
+            metrics.recordReclaimed(reaped);
+        }
+        return reaped;
+    }
+
+    private void heartbeatQuietly() {
+        try {
+            heartbeat();
+        } catch (SQLException e) {
+            logger.error("Unable to renew task leases: {}", e.getMessage());
+        }
+    }
+
+    private void reapQuietly() {
+        try {
+            // a full batch means more are waiting
+            while (reap() == REAP_BATCH) { }
+        } catch (SQLException e) {
+            logger.error("Unable to reclaim expired tasks: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+}
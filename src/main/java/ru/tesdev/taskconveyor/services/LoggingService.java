@@ -2,6 +2,8 @@ package ru.tesdev.taskconveyor.services;
 
 import org.jetbrains.annotations.Nullable;
 import ru.tesdev.taskconveyor.Task;
+import ru.tesdev.taskconveyor.journal.TaskJournal;
+import ru.tesdev.taskconveyor.types.LoggingOptions;
 import ru.tesdev.taskconveyor.types.TaskStatus;
 
 import java.io.FileWriter;
@@ -11,17 +13,43 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
-public class LoggingService {
+public class LoggingService implements AutoCloseable {
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("HH-mm-ss-SSS_dd-MM-yyyy");
+    private static final DateTimeFormatter LINE_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss:SSS");
+
     private final @Nullable Path loggingFolder;
-    private String currentLogFile;
+    private volatile String currentLogFile;
+    private final @Nullable AsyncLogWriter asyncWriter;
+    private final @Nullable TaskJournal journal;
 
     public LoggingService(@Nullable Path loggingFolder) {
+        this(loggingFolder, null, null);
+    }
+
+    // events are handed to a background writer through a ring buffer instead of being written inline
+    public LoggingService(@Nullable Path loggingFolder, LoggingOptions options) {
+        this(loggingFolder, options, null);
+    }
+
+    // the journal receives a binary record of every execution and status change next to the text log
+    public LoggingService(@Nullable Path loggingFolder, @Nullable LoggingOptions options, @Nullable TaskJournal journal) {
         this.loggingFolder = loggingFolder;
+        this.asyncWriter = loggingFolder == null || options == null
+                ? null
+                : new AsyncLogWriter(options, this::currentLogPath, this::newLogFile);
+        this.journal = journal;
+    }
+
+    private synchronized Path currentLogPath() {
+        if (currentLogFile == null) {
+            newLogFile();
+        }
+        return loggingFolder.resolve(currentLogFile);
     }
 
-    public void newLogFile() {
+    public synchronized void newLogFile() {
         LocalDateTime now = LocalDateTime.now();
-        String formatted = now.format(DateTimeFormatter.ofPattern("HH-mm-ss-SSS_dd-MM-yyyy"));
+        String formatted = now.format(FILE_NAME_FORMAT);
         this.currentLogFile = formatted+".log";
         if (loggingFolder != null) {
             try {
@@ -31,11 +59,24 @@ public class LoggingService {
         }
     }
 
-    public synchronized void executeTask(Task task) {
+    public void executeTask(Task task) {
+        if (journal != null) {
+            journal.append(task.getId(), task.getType(), TaskStatus.WORK);
+        }
+        if (asyncWriter != null) {
+            asyncWriter.append(AsyncLogWriter.EXECUTE, task.getId(), task.getType(), null);
+            return;
+        }
+        synchronized (this) {
+            writeExecuteTask(task);
+        }
+    }
+
+    private void writeExecuteTask(Task task) {
         if (loggingFolder != null) {
             try (FileWriter fw = new FileWriter(loggingFolder.resolve(currentLogFile).toFile(), true)) {
                 LocalDateTime now = LocalDateTime.now();
-                String line = String.format("[%s] (%s) Execute task %s Type %s", now.format(DateTimeFormatter.ofPattern("HH:mm:ss:SSS")), Thread.currentThread().getName(), task.getId().toString(), task.getType());
+                String line = String.format("[%s] (%s) Execute task %s Type %s", now.format(LINE_TIME_FORMAT), Thread.currentThread().getName(), task.getId().toString(), task.getType());
                 fw.write(line+"\n");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -43,11 +84,28 @@ public class LoggingService {
         }
     }
 
-    public synchronized void markTask(UUID uuid, TaskStatus mark) {
+    public void markTask(UUID uuid, TaskStatus mark) {
+        markTask(uuid, null, mark);
+    }
+
+    public void markTask(UUID uuid, @Nullable String type, TaskStatus mark) {
+        if (journal != null) {
+            journal.append(uuid, type, mark);
+        }
+        if (asyncWriter != null) {
+            asyncWriter.append(AsyncLogWriter.MARK, uuid, null, mark);
+            return;
+        }
+        synchronized (this) {
+            writeMarkTask(uuid, mark);
+        }
+    }
+
+    private void writeMarkTask(UUID uuid, TaskStatus mark) {
         if (loggingFolder != null) {
             try (FileWriter fw = new FileWriter(loggingFolder.resolve(currentLogFile).toFile(), true)) {
                 LocalDateTime now = LocalDateTime.now();
-                String line = String.format("[%s] (%s) Task %s marked as %s", now.format(DateTimeFormatter.ofPattern("HH:mm:ss:SSS")), Thread.currentThread().getName(), uuid, mark.name());
+                String line = String.format("[%s] (%s) Task %s marked as %s", now.format(LINE_TIME_FORMAT), Thread.currentThread().getName(), uuid, mark.name());
                 fw.write(line+"\n");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -56,10 +114,14 @@ public class LoggingService {
     }
 
     public synchronized void pollingStarted() {
+        if (asyncWriter != null) {
+            asyncWriter.append(AsyncLogWriter.POLLING_STARTED, 0, 0, null, null);
+            return;
+        }
         if (loggingFolder != null) {
             try (FileWriter fw = new FileWriter(loggingFolder.resolve(currentLogFile).toFile(), true)) {
                 LocalDateTime now = LocalDateTime.now();
-                String line = String.format("[%s] (%s) Polling started", now.format(DateTimeFormatter.ofPattern("HH:mm:ss:SSS")), Thread.currentThread().getName());
+                String line = String.format("[%s] (%s) Polling started", now.format(LINE_TIME_FORMAT), Thread.currentThread().getName());
                 fw.write(line + "\n");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -68,10 +130,14 @@ public class LoggingService {
     }
 
     public synchronized void pollingShutdown() {
+        if (asyncWriter != null) {
+            asyncWriter.append(AsyncLogWriter.POLLING_SHUTDOWN, 0, 0, null, null);
+            return;
+        }
         if (loggingFolder != null) {
             try (FileWriter fw = new FileWriter(loggingFolder.resolve(currentLogFile).toFile(), true)) {
                 LocalDateTime now = LocalDateTime.now();
-                String line = String.format("[%s] (%s) Polling shutdown", now.format(DateTimeFormatter.ofPattern("HH:mm:ss:SSS")), Thread.currentThread().getName());
+                String line = String.format("[%s] (%s) Polling shutdown", now.format(LINE_TIME_FORMAT), Thread.currentThread().getName());
                 fw.write(line + "\n");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -80,14 +146,32 @@ public class LoggingService {
     }
 
     public synchronized void unHandleType(Task task) {
+        if (asyncWriter != null) {
+            asyncWriter.append(AsyncLogWriter.UNHANDLED_TYPE, task.getId(), task.getType(), null);
+            return;
+        }
         if (loggingFolder != null) {
             try (FileWriter fw = new FileWriter(loggingFolder.resolve(currentLogFile).toFile(), true)) {
                 LocalDateTime now = LocalDateTime.now();
-                String line = String.format("[%s] (%s) Unhandled type %s in task %s", now.format(DateTimeFormatter.ofPattern("HH:mm:ss:SSS")), Thread.currentThread().getName(), task.getType(), task.getId().toString());
+                String line = String.format("[%s] (%s) Unhandled type %s in task %s", now.format(LINE_TIME_FORMAT), Thread.currentThread().getName(), task.getType(), task.getId().toString());
                 fw.write(line + "\n");
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
     }
+
+    public long getDroppedEvents() {
+        return asyncWriter == null ? 0 : asyncWriter.getDropped();
+    }
+
+    @Override
+    public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
 }
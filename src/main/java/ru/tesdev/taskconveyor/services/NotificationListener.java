@@ -0,0 +1,93 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import ru.tesdev.taskconveyor.store.TaskStore;
+import ru.tesdev.taskconveyor.types.DatabaseConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.List;
+
+public class NotificationListener implements TaskStore.WakeSignal {
+    public static final String CHANNEL_PREFIX = "tc_";
+    // channel names are identifiers, cut at 63 bytes by PostgreSQL
+    private static final int MAX_NAME_BYTES = 60;
+
+    private final DatabaseConfig dbConfig;
+    private final List<String> channels;
+    private volatile Connection connection;
+    private volatile boolean closed = false;
+
+    public NotificationListener(DatabaseConfig dbConfig, List<String> handlerNames) {
+        this.dbConfig = dbConfig;
+        this.channels = handlerNames.stream().map(NotificationListener::channel).toList();
+    }
+
+    // same as taskconveyor.tc_channel: long handler names are notified on the md5 of the name
+    public static String channel(String handlerName) {
+        byte[] bytes = handlerName.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_NAME_BYTES) { return CHANNEL_PREFIX + handlerName; }
+        try {
+            return CHANNEL_PREFIX + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // blocks until a notification arrives or the timeout passes, returns true if woken by a notification
+    @Override
+    public boolean await(long timeoutMillis) throws SQLException {
+        if (closed) { return false; }
+        try {
+            Connection conn = connection();
+            PGNotification[] notifications = conn.unwrap(PGConnection.class)
+                    .getNotifications((int) Math.max(1, Math.min(timeoutMillis, Integer.MAX_VALUE)));
+            return notifications != null && notifications.length > 0;
+        } catch (SQLException e) {
+            // the next await reconnects and re-subscribes
+            dropConnection();
+            if (closed) { return false; }
+            throw e;
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        Connection conn = connection;
+        if (conn == null) {
+            conn = DriverManager.getConnection(dbConfig.getConnectUrl(), dbConfig.getUser(), dbConfig.getPassword());
+            try (Statement stmt = conn.createStatement()) {
+                for (String channel : channels) {
+                    stmt.execute("LISTEN \"" + channel.replace("\"", "\"\"") + "\"");
+                }
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+            connection = conn;
+        }
+        return conn;
+    }
+
+    private void dropConnection() {
+        Connection conn = connection;
+        connection = null;
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) { }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dropConnection();
+    }
+}
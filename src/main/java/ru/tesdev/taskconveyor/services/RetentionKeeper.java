@@ -0,0 +1,90 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
+import ru.tesdev.taskconveyor.store.TaskStore;
+import ru.tesdev.taskconveyor.types.RetentionPolicy;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps finished tasks out of the hot table: each run deletes what is past the retention, archives what is
+// past the hot period and drops expired archive partitions. Work is done in small batches with a pause
+// between them, and a run stops early when a batch gets slow, so claims and status writes keep the database.
+public class RetentionKeeper implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+
+    private final TaskStore store;
+    private final RetentionPolicy policy;
+    private final MetricsRegistry metrics;
+    private ScheduledExecutorService timer;
+
+    public RetentionKeeper(TaskStore store, RetentionPolicy policy, MetricsRegistry metrics) {
+        this.store = store;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (timer != null) { return; }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskConveyor-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::runQuietly, policy.getIntervalMillis(), policy.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // false when the run ended early, the rest waits for the next run
+    public boolean run() throws SQLException, InterruptedException {
+        Instant now = Instant.now();
+        Instant retainFrom = now.minusMillis(policy.getRetainMillis());
+        if (!drain(false, retainFrom)) { return false; }
+        if (policy.isArchiving()) {
+            if (!drain(true, now.minusMillis(policy.getArchiveAfterMillis()))) { return false; }
+            store.dropArchived(retainFrom);
+        }
+        return true;
+    }
+
+    private boolean drain(boolean archive, Instant finishedBefore) throws SQLException, InterruptedException {
+        while (true) {
+            long started = System.nanoTime();
+            int rows = archive
+                    ? store.archiveFinished(finishedBefore, policy.getBatchSize())
+                    : store.purgeFinished(finishedBefore, policy.getBatchSize());
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            if (rows > 0) {
+                metrics.recordRetention(archive ? rows : 0, archive ? 0 : rows);
+            }
+            if (rows < policy.getBatchSize()) { return true; }
+            if (tookMillis > policy.getMaxBatchMillis()) {
+                logger.debug("Retention batch took {}ms, backing off until the next run", tookMillis);
+                return false;
+            }
+            Thread.sleep(policy.getPauseMillis());
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (SQLException e) {
+            logger.error("Unable to apply task retention: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+}
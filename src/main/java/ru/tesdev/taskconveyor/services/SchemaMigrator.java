@@ -0,0 +1,273 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Versioned schema bootstrap. Applied versions are recorded in taskconveyor.tc_schema_version,
+// a session advisory lock keeps conveyors starting at the same time from migrating twice.
+public class SchemaMigrator {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+    private static final long LOCK_KEY = 0x7463_5f73_6368_656dL; // "tc_schem"
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "baseline tables, status enum and triggers", true, connection -> execute(connection, """
+                SET LOCAL search_path TO taskconveyor;
+
+                -- enum type
+                DO $$
+                BEGIN
+                    IF NOT EXISTS (SELECT 1 FROM pg_type WHERE typname = 'task_status') THEN
+                        CREATE TYPE task_status AS ENUM ('new', 'work', 'done', 'deny');
+                    end if;
+                END$$;
+
+                CREATE TABLE IF NOT EXISTS TC_Tasks
+                (
+                    index           INTEGER         GENERATED ALWAYS AS IDENTITY,
+                    uuid            UUID            DEFAULT gen_random_uuid(),
+                    type            TEXT            NOT NULL,
+                    payload         JSON            DEFAULT '{}'::json,
+                    status          task_status     DEFAULT 'new',
+                    created_at      BIGINT          DEFAULT EXTRACT(EPOCH FROM NOW())::BIGINT,
+                    owner           TEXT            NOT NULL,
+                    description     TEXT,
+                    locked          BOOLEAN         DEFAULT FALSE,
+                    handler_name      TEXT            NOT NULL
+                );
+
+                -- locked prevent update script
+                CREATE OR REPLACE FUNCTION prevent_update_if_locked()
+                RETURNS TRIGGER AS $$
+                BEGIN
+                    IF OLD.locked = TRUE AND NEW.locked != FALSE THEN
+                        RAISE EXCEPTION 'Row locked';
+                    END IF;
+                    RETURN NEW;
+                END;
+                $$ LANGUAGE plpgsql;
+
+                -- trigger
+                DROP TRIGGER IF EXISTS trg_prevent_update_if_locked ON TC_Tasks;
+                CREATE TRIGGER trg_prevent_update_if_locked
+                    BEFORE UPDATE ON TC_Tasks
+                    FOR EACH ROW
+                EXECUTE FUNCTION prevent_update_if_locked();
+
+                -- wake up listening conveyors, once per handler per insert statement
+                CREATE OR REPLACE FUNCTION notify_new_tasks()
+                RETURNS TRIGGER AS $$
+                BEGIN
+                    PERFORM pg_notify('tc_' || handler_name, '')
+                    FROM (SELECT DISTINCT handler_name FROM inserted_tasks) AS handlers;
+                    RETURN NULL;
+                END;
+                $$ LANGUAGE plpgsql;
+
+                DROP TRIGGER IF EXISTS trg_notify_new_tasks ON TC_Tasks;
+                CREATE TRIGGER trg_notify_new_tasks
+                    AFTER INSERT ON TC_Tasks
+                    REFERENCING NEW TABLE AS inserted_tasks
+                    FOR EACH STATEMENT
+                EXECUTE FUNCTION notify_new_tasks();
+            """)),
+            // indexes are built CONCURRENTLY so existing deployments keep processing during the upgrade,
+            // an index left invalid by an interrupted build is dropped and rebuilt on the next start
+            new Migration(2, "primary key on index", false, connection -> {
+                if (exists(connection, "SELECT 1 FROM pg_constraint WHERE conrelid = 'taskconveyor.tc_tasks'::regclass AND contype = 'p'")) {
+                    return;
+                }
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_pkey");
+                execute(connection, "CREATE UNIQUE INDEX CONCURRENTLY tc_tasks_pkey ON taskconveyor.tc_tasks (index)");
+                execute(connection, "ALTER TABLE taskconveyor.tc_tasks ADD CONSTRAINT tc_tasks_pkey PRIMARY KEY USING INDEX tc_tasks_pkey");
+            }),
+            new Migration(3, "unique index on uuid", false, connection -> {
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_uuid_key");
+                execute(connection, "CREATE UNIQUE INDEX CONCURRENTLY tc_tasks_uuid_key ON taskconveyor.tc_tasks (uuid)");
+            }),
+            // only claimable rows are indexed, so the poll stays flat however many finished rows pile up
+            new Migration(4, "partial claim index", false, connection -> {
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_claim_idx");
+                execute(connection, """
+                    CREATE INDEX CONCURRENTLY tc_tasks_claim_idx ON taskconveyor.tc_tasks (handler_name, index)
+                    WHERE status = 'new' AND locked = false
+                """);
+            }),
+            // rows already in work when this runs may belong to nodes without leases, they get an hour before reclaim
+            new Migration(5, "claim owner and lease expiry", true, connection -> execute(connection, """
+                ALTER TABLE taskconveyor.tc_tasks ADD COLUMN IF NOT EXISTS claimed_by TEXT;
+                ALTER TABLE taskconveyor.tc_tasks ADD COLUMN IF NOT EXISTS lease_until TIMESTAMPTZ;
+                UPDATE taskconveyor.tc_tasks SET lease_until = NOW() + INTERVAL '1 hour'
+                WHERE status = 'work' AND locked = false AND lease_until IS NULL;
+            """)),
+            new Migration(6, "partial lease index", false, connection -> {
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_lease_idx");
+                execute(connection, """
+                    CREATE INDEX CONCURRENTLY tc_tasks_lease_idx ON taskconveyor.tc_tasks (lease_until)
+                    WHERE status = 'work' AND locked = false
+                """);
+            }),
+            new Migration(7, "run_at and attempt counter", true, connection -> execute(connection, """
+                ALTER TABLE taskconveyor.tc_tasks ADD COLUMN IF NOT EXISTS run_at TIMESTAMPTZ NOT NULL DEFAULT NOW();
+                ALTER TABLE taskconveyor.tc_tasks ADD COLUMN IF NOT EXISTS attempts INTEGER NOT NULL DEFAULT 0;
+            """)),
+            // the due index replaces the claim index: claims and the next due lookup both walk it in run_at order
+            new Migration(8, "partial due index", false, connection -> {
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_due_idx");
+                execute(connection, """
+                    CREATE INDEX CONCURRENTLY tc_tasks_due_idx ON taskconveyor.tc_tasks (handler_name, run_at, index)
+                    WHERE status = 'new' AND locked = false
+                """);
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_claim_idx");
+            }),
+            // archived rows are partitioned by the day they finished, so retention drops whole partitions
+            // instead of deleting rows; partitions are created by the archiver as it needs them
+            new Migration(9, "finished_at and the archive table", true, connection -> execute(connection, """
+                ALTER TABLE taskconveyor.tc_tasks ADD COLUMN IF NOT EXISTS finished_at TIMESTAMPTZ;
+
+                CREATE TABLE IF NOT EXISTS taskconveyor.tc_tasks_archive
+                (
+                    index           INTEGER         NOT NULL,
+                    uuid            UUID            NOT NULL,
+                    type            TEXT            NOT NULL,
+                    payload         JSON,
+                    status          taskconveyor.task_status NOT NULL,
+                    created_at      BIGINT,
+                    owner           TEXT            NOT NULL,
+                    description     TEXT,
+                    handler_name    TEXT            NOT NULL,
+                    attempts        INTEGER         NOT NULL,
+                    run_at          TIMESTAMPTZ     NOT NULL,
+                    finished_at     TIMESTAMPTZ     NOT NULL,
+                    archived_at     TIMESTAMPTZ     NOT NULL DEFAULT NOW()
+                ) PARTITION BY RANGE (finished_at);
+
+                CREATE INDEX IF NOT EXISTS tc_tasks_archive_uuid_idx ON taskconveyor.tc_tasks_archive (uuid);
+            """)),
+            // rows finished before finished_at existed age from their run_at
+            new Migration(10, "partial finished index", false, connection -> {
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS taskconveyor.tc_tasks_finished_idx");
+                execute(connection, """
+                    CREATE INDEX CONCURRENTLY tc_tasks_finished_idx ON taskconveyor.tc_tasks ((COALESCE(finished_at, run_at)))
+                    WHERE status IN ('done', 'deny')
+                """);
+            }),
+            // channel names are identifiers and fail past 63 bytes, long handler names are notified on their md5.
+            // NotificationListener.channel builds the same names
+            new Migration(11, "channel names for long handler names", true, connection -> execute(connection, """
+                CREATE OR REPLACE FUNCTION taskconveyor.tc_channel(handler_name TEXT)
+                RETURNS TEXT AS $$
+                    SELECT 'tc_' || CASE WHEN octet_length(handler_name) > 60 THEN md5(handler_name) ELSE handler_name END
+                $$ LANGUAGE sql IMMUTABLE;
+
+                CREATE OR REPLACE FUNCTION taskconveyor.notify_new_tasks()
+                RETURNS TRIGGER AS $$
+                BEGIN
+                    PERFORM pg_notify(taskconveyor.tc_channel(handler_name), '')
+                    FROM (SELECT DISTINCT handler_name FROM inserted_tasks) AS handlers;
+                    RETURN NULL;
+                END;
+                $$ LANGUAGE plpgsql;
+            """))
+    );
+
+    private final ConnectionPool pool;
+
+    public SchemaMigrator(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    // applies every migration newer than the recorded version, returns the number applied
+    public int migrate() throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            execute(connection, """
+                CREATE SCHEMA IF NOT EXISTS taskconveyor;
+                CREATE TABLE IF NOT EXISTS taskconveyor.tc_schema_version
+                (
+                    version         INTEGER         PRIMARY KEY,
+                    description     TEXT            NOT NULL,
+                    applied_at      TIMESTAMPTZ     DEFAULT NOW()
+                );
+            """);
+            execute(connection, "SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+            try {
+                int current = currentVersion(connection);
+                int applied = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version() <= current) { continue; }
+                    logger.info("Applying schema migration {}: {}", migration.version(), migration.description());
+                    apply(connection, migration);
+                    applied++;
+                }
+                return applied;
+            } finally {
+                execute(connection, "SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        }
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        if (migration.transactional()) {
+            connection.setAutoCommit(false);
+            try {
+                migration.step().apply(connection);
+                record(connection, migration);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } else {
+            // CONCURRENTLY cannot run inside a transaction block, the version is recorded once every statement succeeded
+            migration.step().apply(connection);
+            record(connection, migration);
+        }
+    }
+
+    private static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM taskconveyor.tc_schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void record(Connection connection, Migration migration) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO taskconveyor.tc_schema_version (version, description) VALUES (?, ?)")) {
+            stmt.setInt(1, migration.version());
+            stmt.setString(2, migration.description());
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static boolean exists(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next();
+        }
+    }
+
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private record Migration(int version, String description, boolean transactional, Step step) { }
+}
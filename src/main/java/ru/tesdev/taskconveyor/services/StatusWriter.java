@@ -0,0 +1,105 @@
+package ru.tesdev.taskconveyor.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.tesdev.taskconveyor.store.TaskStore;
+import ru.tesdev.taskconveyor.store.TaskStore.Transition;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// Write-behind for status + lock transitions, coalesced per task and flushed as one statement
+class StatusWriter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger("TaskConveyor");
+
+    private final TaskStore store;
+    private final int maxBatch;
+    private final long flushIntervalMillis;
+    private final Thread flusher;
+
+    private final Object monitor = new Object();
+    private Map<UUID, Transition> pending = new LinkedHashMap<>();
+    private CompletableFuture<Void> pendingFlush = new CompletableFuture<>();
+    private boolean closed = false;
+
+    StatusWriter(TaskStore store, int maxBatch, long flushIntervalMillis) {
+        this.store = store;
+        this.maxBatch = maxBatch;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusher = new Thread(this::run, "TaskConveyor-status-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // returns a future completed once the transition is written
+    CompletableFuture<Void> submit(UUID uuid, TaskStatus status, boolean lock) {
+        synchronized (monitor) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Status writer is closed"));
+            }
+            pending.put(uuid, new Transition(uuid, status, lock));
+            if (pending.size() == 1 || pending.size() >= maxBatch) {
+                monitor.notifyAll();
+            }
+            return pendingFlush;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Map<UUID, Transition> batch;
+            CompletableFuture<Void> done;
+            synchronized (monitor) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        monitor.wait();
+                    }
+                    long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                    while (pending.size() < maxBatch && !closed) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) { break; }
+                        monitor.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // stops like close(): what is pending is still written, later submits fail at once
+                    logger.warn("Status writer interrupted, closing");
+                    closed = true;
+                }
+                if (pending.isEmpty() && closed) {
+                    pendingFlush.complete(null);
+                    return;
+                }
+                batch = pending;
+                done = pendingFlush;
+                pending = new LinkedHashMap<>();
+                pendingFlush = new CompletableFuture<>();
+            }
+            try {
+                store.transition(new ArrayList<>(batch.values()));
+                done.complete(null);
+            } catch (SQLException | RuntimeException e) {
+                // callers waiting on the flush must see the failure, the thread itself keeps going
+                logger.error("Unable to write {} task status updates: {}", batch.size(), e.getMessage());
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (monitor) {
+            closed = true;
+            monitor.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,46 +1,222 @@
 package ru.tesdev.taskconveyor.services;
 
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.metrics.MetricsRegistry;
+import ru.tesdev.taskconveyor.store.PostgresTaskStore;
+import ru.tesdev.taskconveyor.store.TaskStore;
 import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.FlushPolicy;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.TaskStatus;
 import ru.tesdev.taskconveyor.exceptions.TaskConveyorException;
 
-import java.sql.*;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
-public class TaskService {
-    private final DatabaseConfig dbConfig;
+public class TaskService implements AutoCloseable {
+    private final TaskStore store;
     private final LoggingService loggingService;
+    private final FlushPolicy flushPolicy;
+    private final @Nullable StatusWriter statusWriter;
+    private final MetricsRegistry metrics;
+    // the store was opened here and is closed with the service, stores and pools passed in belong to the caller
+    private final boolean ownsStore;
+    private final Map<String, EnqueueBatcher> batchers = new ConcurrentHashMap<>();
+
+    private static final int ENQUEUE_BATCH = 1_000;
 
     public TaskService(DatabaseConfig dbConfig, LoggingService loggingService) {
-        this.dbConfig = dbConfig;
+        this(new PostgresTaskStore(new ConnectionPool(dbConfig)), loggingService, FlushPolicy.SYNC, 1, 0, new MetricsRegistry(), true);
+    }
+
+    public TaskService(ConnectionPool pool, LoggingService loggingService) {
+        this(pool, loggingService, FlushPolicy.SYNC, 1, 0);
+    }
+
+    public TaskService(ConnectionPool pool, LoggingService loggingService,
+                       FlushPolicy flushPolicy, int maxBatch, long flushIntervalMillis) {
+        this(pool, loggingService, flushPolicy, maxBatch, flushIntervalMillis, new MetricsRegistry());
+    }
+
+    public TaskService(ConnectionPool pool, LoggingService loggingService,
+                       FlushPolicy flushPolicy, int maxBatch, long flushIntervalMillis, MetricsRegistry metrics) {
+        this(new PostgresTaskStore(pool), loggingService, flushPolicy, maxBatch, flushIntervalMillis, metrics);
+    }
+
+    public TaskService(TaskStore store, LoggingService loggingService) {
+        this(store, loggingService, FlushPolicy.SYNC, 1, 0, new MetricsRegistry());
+    }
+
+    public TaskService(TaskStore store, LoggingService loggingService,
+                       FlushPolicy flushPolicy, int maxBatch, long flushIntervalMillis, MetricsRegistry metrics) {
+        this(store, loggingService, flushPolicy, maxBatch, flushIntervalMillis, metrics, false);
+    }
+
+    private TaskService(TaskStore store, LoggingService loggingService, FlushPolicy flushPolicy, int maxBatch,
+                        long flushIntervalMillis, MetricsRegistry metrics, boolean ownsStore) {
+        this.store = store;
+        this.ownsStore = ownsStore;
         this.loggingService = loggingService;
+        this.flushPolicy = flushPolicy;
+        this.statusWriter = flushPolicy == FlushPolicy.SYNC ? null : new StatusWriter(store, maxBatch, flushIntervalMillis);
+        this.metrics = metrics;
     }
 
-    public void updateStatus(UUID uuid, ru.tesdev.taskconveyor.types.TaskStatus status) throws TaskConveyorException {
-        try (Connection connection = DriverManager.getConnection(dbConfig.getConnectUrl(),
-                dbConfig.getUser(), dbConfig.getPassword())) {
-            try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET status = ?::taskconveyor.task_status WHERE uuid = ?::uuid AND locked = false")) {
-                stmt.setString(1, status.name().toLowerCase());
-                stmt.setString(2, uuid.toString());
-                stmt.executeUpdate();
-            }
-            loggingService.markTask(uuid, status);
+    // one round-trip for the whole collection, results are in input order
+    public List<EnqueuedTask> enqueue(String defaultHandler, List<NewTask> tasks) throws TaskConveyorException {
+        long started = System.nanoTime();
+        try {
+            List<EnqueuedTask> enqueued = store.insert(defaultHandler, tasks);
+            metrics.recordDbWrite(System.nanoTime() - started);
+            return enqueued;
         } catch (SQLException e) {
             throw new TaskConveyorException(e.getMessage());
         }
     }
 
-    public void setLock(UUID uuid, boolean lock) throws TaskConveyorException {
-        try (Connection connection = DriverManager.getConnection(dbConfig.getConnectUrl(),
-                dbConfig.getUser(), dbConfig.getPassword())) {
-            try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET locked = ? WHERE uuid = ?::uuid")) {
-                stmt.setBoolean(1, lock);
-                stmt.setString(2, uuid.toString());
-                stmt.executeUpdate();
+    // concurrent submits are coalesced into shared inserts by a background writer
+    public CompletableFuture<EnqueuedTask> submit(String defaultHandler, NewTask task) {
+        return batchers.computeIfAbsent(defaultHandler, handler -> new EnqueueBatcher(this, handler, ENQUEUE_BATCH)).submit(task);
+    }
+
+    public void complete(UUID uuid, TaskStatus status) throws TaskConveyorException {
+        complete(uuid, null, status);
+    }
+
+    // final transition: status and lock are written together, batched unless the policy is SYNC
+    public void complete(UUID uuid, @Nullable String type, TaskStatus status) throws TaskConveyorException {
+        long started = System.nanoTime();
+        if (statusWriter == null) {
+            try {
+                store.transition(List.of(new TaskStore.Transition(uuid, status, true)));
+            } catch (SQLException e) {
+                throw new TaskConveyorException(e.getMessage());
+            }
+        } else {
+            CompletableFuture<Void> flushed = statusWriter.submit(uuid, status, true);
+            if (flushPolicy == FlushPolicy.GROUP_COMMIT) {
+                try {
+                    flushed.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TaskConveyorException("Interrupted while waiting for status flush");
+                } catch (ExecutionException e) {
+                    throw new TaskConveyorException(e.getCause().getMessage());
+                }
+            }
+        }
+        // under ASYNC this is only the hand-off to the writer, not the database round trip
+        metrics.recordDbWrite(System.nanoTime() - started);
+        metrics.recordCompletion(type, status);
+        loggingService.markTask(uuid, type, status);
+    }
+
+    // final transitions of a whole batch: one statement under SYNC, handed to the writer together otherwise
+    public void completeAll(@Nullable String type, List<TaskStore.Transition> transitions) throws TaskConveyorException {
+        if (transitions.isEmpty()) { return; }
+        long started = System.nanoTime();
+        if (statusWriter == null) {
+            try {
+                store.transition(transitions);
             } catch (SQLException e) {
                 throw new TaskConveyorException(e.getMessage());
             }
+        } else {
+            CompletableFuture<?>[] flushed = new CompletableFuture<?>[transitions.size()];
+            for (int i = 0; i < flushed.length; i++) {
+                TaskStore.Transition transition = transitions.get(i);
+                flushed[i] = statusWriter.submit(transition.uuid(), transition.status(), transition.lock());
+            }
+            if (flushPolicy == FlushPolicy.GROUP_COMMIT) {
+                try {
+                    CompletableFuture.allOf(flushed).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TaskConveyorException("Interrupted while waiting for status flush");
+                } catch (ExecutionException e) {
+                    throw new TaskConveyorException(e.getCause().getMessage());
+                }
+            }
+        }
+        metrics.recordDbWrite(System.nanoTime() - started);
+        for (TaskStore.Transition transition : transitions) {
+            metrics.recordCompletion(type, transition.status());
+            loggingService.markTask(transition.uuid(), type, transition.status());
+        }
+    }
+
+    // The parent's final transition and its children commit together: children are only written
+    // while the parent is still unlocked, so a crash or a second completion can neither lose nor duplicate them
+    public List<EnqueuedTask> complete(UUID uuid, @Nullable String type, TaskStatus status,
+                                       String defaultHandler, List<NewTask> children) throws TaskConveyorException {
+        if (children.isEmpty()) {
+            complete(uuid, type, status);
+            return List.of();
+        }
+        long started = System.nanoTime();
+        List<EnqueuedTask> enqueued;
+        try {
+            enqueued = store.complete(uuid, status, defaultHandler, children);
+        } catch (SQLException e) {
+            throw new TaskConveyorException(e.getMessage());
+        }
+        if (enqueued == null) {
+            throw new TaskConveyorException(String.format("Task %s is already completed, %d child tasks discarded", uuid, children.size()));
+        }
+        metrics.recordDbWrite(System.nanoTime() - started);
+        metrics.recordCompletion(type, status);
+        loggingService.markTask(uuid, type, status);
+        return enqueued;
+    }
+
+    // back to new with a later run_at, listeners are woken so they can shorten their wait for it
+    public void schedule(UUID uuid, @Nullable String type, Instant runAt) throws TaskConveyorException {
+        long started = System.nanoTime();
+        try {
+            store.schedule(uuid, runAt);
+            metrics.recordDbWrite(System.nanoTime() - started);
+            loggingService.markTask(uuid, type, TaskStatus.NEW);
+        } catch (SQLException e) {
+            throw new TaskConveyorException(e.getMessage());
+        }
+    }
+
+    public void updateStatus(UUID uuid, TaskStatus status) throws TaskConveyorException {
+        long started = System.nanoTime();
+        try {
+            store.updateStatus(uuid, status);
+            metrics.recordDbWrite(System.nanoTime() - started);
+            loggingService.markTask(uuid, status);
+        } catch (SQLException e) {
+            throw new TaskConveyorException(e.getMessage());
+        }
+    }
+
+    public void setLock(UUID uuid, boolean lock) throws TaskConveyorException {
+        long started = System.nanoTime();
+        try {
+            store.setLock(uuid, lock);
+            metrics.recordDbWrite(System.nanoTime() - started);
         } catch (SQLException e) {
             throw new TaskConveyorException(e.getMessage());
         }
     }
+
+    @Override
+    public void close() {
+        batchers.values().forEach(EnqueueBatcher::close);
+        if (statusWriter != null) {
+            statusWriter.close();
+        }
+        if (ownsStore) {
+            store.close();
+        }
+    }
 }
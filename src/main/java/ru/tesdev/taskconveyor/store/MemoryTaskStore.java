@@ -0,0 +1,486 @@
+package ru.tesdev.taskconveyor.store;
+
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+// In-process store for tests and same-JVM pipelines, nothing survives the JVM.
+// Each task's status, lock, run_at and lease are one immutable snapshot swapped by CAS, due tasks wait in
+// lock-free queues per handler and type, tasks scheduled for later in a per handler skip list ordered by run_at.
+// Queues hold references tagged with the run_at they were queued for, a reference whose task has since been
+// claimed, locked or rescheduled is stale and dropped when it reaches the head.
+public class MemoryTaskStore implements TaskStore {
+    private final Map<UUID, Entry> byUuid = new ConcurrentHashMap<>();
+    private final Map<Integer, Entry> byIndex = new ConcurrentHashMap<>();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    // claimed tasks, walked by the lease reaper
+    private final Set<Entry> inWork = ConcurrentHashMap.newKeySet();
+    // tasks in the order they finished, walked by retention
+    private final Queue<Finished> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final Object wakeMonitor = new Object();
+    private final AtomicInteger sleepers = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    @Override
+    public void prepare() { }
+
+    @Override
+    public int claim(ClaimRequest request, ClaimSink sink) {
+        long now = System.currentTimeMillis();
+        List<Queue<Scheduled>> candidates = new ArrayList<>();
+        for (String handlerName : handlerNames(request.handlerName())) {
+            Handler handler = handlers.get(handlerName);
+            if (handler == null) { continue; }
+            handler.promote(now);
+            handler.ready.forEach((type, queue) -> {
+                if (request.types().contains(type) == request.include()) {
+                    candidates.add(queue);
+                }
+            });
+        }
+        int claimed = 0;
+        while (claimed < request.limit()) {
+            // oldest head by run_at, index across the candidate queues
+            Queue<Scheduled> oldestQueue = null;
+            Scheduled oldest = null;
+            for (Queue<Scheduled> queue : candidates) {
+                Scheduled head = liveHead(queue);
+                if (head != null && (oldest == null || head.compareTo(oldest) < 0)) {
+                    oldest = head;
+                    oldestQueue = queue;
+                }
+            }
+            if (oldest == null) { break; }
+            if (!oldestQueue.remove(oldest)) { continue; }
+            Scheduled ref = oldest;
+            Entry entry = ref.entry;
+            State claimedState = entry.update(s -> ref.isFor(s)
+                    ? new State(TaskStatus.WORK, false, s.runAt, s.attempts + 1, request.nodeId(), now + request.leaseMillis())
+                    : null);
+            if (claimedState == null) { continue; }
+            inWork.add(entry);
+            claimed++;
+            sink.accept(new ClaimedTask(entry.index, entry.uuid, entry.type, entry.payload, "work",
+                    entry.createdAt, entry.owner, entry.description, false, claimedState.attempts));
+        }
+        return claimed;
+    }
+
+    private static @Nullable Scheduled liveHead(Queue<Scheduled> queue) {
+        Scheduled head;
+        while ((head = queue.peek()) != null && !head.isFor(head.entry.state.get())) {
+            queue.remove(head);
+        }
+        return head;
+    }
+
+    @Override
+    public long nextDue(String handlerName) {
+        long next = Long.MAX_VALUE;
+        for (String name : handlerNames(handlerName)) {
+            Handler handler = handlers.get(name);
+            if (handler == null) { continue; }
+            for (Iterator<Scheduled> it = handler.later.iterator(); it.hasNext(); ) {
+                Scheduled scheduled = it.next();
+                if (scheduled.isFor(scheduled.entry.state.get())) {
+                    next = Math.min(next, scheduled.runAt);
+                    break;
+                }
+                it.remove();
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public List<EnqueuedTask> insert(String defaultHandler, List<NewTask> tasks) throws SQLException, TaskPayloadException {
+        List<Entry> entries = prepare(defaultHandler, tasks);
+        publish(entries);
+        List<EnqueuedTask> enqueued = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            enqueued.add(new EnqueuedTask(entry.index, entry.uuid));
+        }
+        return enqueued;
+    }
+
+    @Override
+    public void transition(List<Transition> transitions) {
+        for (Transition transition : transitions) {
+            change(transition.uuid(), s -> s.locked ? null : s.with(transition.status(), transition.lock()));
+        }
+    }
+
+    // children are built (and their payloads serialized) before the parent is touched, so a bad payload changes nothing
+    @Override
+    public @Nullable List<EnqueuedTask> complete(UUID parent, TaskStatus status, String defaultHandler, List<NewTask> children)
+            throws SQLException, TaskPayloadException {
+        List<Entry> entries = prepare(defaultHandler, children);
+        if (change(parent, s -> s.locked ? null : s.with(status, true)) == null) {
+            return null;
+        }
+        publish(entries);
+        List<EnqueuedTask> enqueued = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            enqueued.add(new EnqueuedTask(entry.index, entry.uuid));
+        }
+        return enqueued;
+    }
+
+    @Override
+    public void schedule(UUID uuid, Instant runAt) {
+        change(uuid, s -> s.locked ? null : new State(TaskStatus.NEW, false, runAt.toEpochMilli(), s.attempts, null, 0));
+    }
+
+    @Override
+    public void updateStatus(UUID uuid, TaskStatus status) {
+        change(uuid, s -> s.locked ? null : s.with(status, false));
+    }
+
+    // the only unguarded write, so the only one that can hit the locked trigger
+    @Override
+    public void setLock(UUID uuid, boolean lock) throws SQLException {
+        Entry entry = byUuid.get(uuid);
+        if (entry == null) { return; }
+        while (true) {
+            State current = entry.state.get();
+            if (current.locked && lock) {
+                throw new SQLException("Row locked");
+            }
+            State next = current.with(current.status, lock);
+            if (entry.state.compareAndSet(current, next)) {
+                changed(entry, current, next);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int renewLeases(String nodeId, Integer[] indexes, long leaseMillis) {
+        long leaseUntil = System.currentTimeMillis() + leaseMillis;
+        int renewed = 0;
+        for (Integer index : indexes) {
+            Entry entry = byIndex.get(index);
+            if (entry == null) { continue; }
+            State next = entry.update(s -> s.status == TaskStatus.WORK && !s.locked && nodeId.equals(s.claimedBy)
+                    ? new State(s.status, false, s.runAt, s.attempts, s.claimedBy, leaseUntil)
+                    : null);
+            if (next != null) { renewed++; }
+        }
+        return renewed;
+    }
+
+    @Override
+    public int reclaimExpired(String handlerName, int limit) {
+        long now = System.currentTimeMillis();
+        int reclaimed = 0;
+        for (Iterator<Entry> it = inWork.iterator(); it.hasNext() && reclaimed < limit; ) {
+            Entry entry = it.next();
+            if (!entry.handlerName.equals(handlerName) && !entry.handlerName.equals("*")) { continue; }
+            State current = entry.state.get();
+            if (current.status != TaskStatus.WORK || current.locked) {
+                it.remove();
+                continue;
+            }
+            if (current.leaseUntil >= now) { continue; }
+            State next = new State(TaskStatus.NEW, false, current.runAt, current.attempts, null, 0);
+            if (entry.state.compareAndSet(current, next)) {
+                changed(entry, current, next);
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    // a task that is no longer done or deny when its turn comes is skipped
+    @Override
+    public int purgeFinished(Instant finishedBefore, int limit) {
+        long before = finishedBefore.toEpochMilli();
+        int purged = 0;
+        while (purged < limit) {
+            Finished head = finished.peek();
+            if (head == null || head.at >= before) { break; }
+            finished.poll();
+            if (!isFinished(head.entry.state.get().status)) { continue; }
+            if (byUuid.remove(head.entry.uuid, head.entry)) {
+                byIndex.remove(head.entry.index, head.entry);
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    // nothing outlives the JVM here, so there is no archive to move to
+    @Override
+    public int archiveFinished(Instant finishedBefore, int limit) {
+        return purgeFinished(finishedBefore, limit);
+    }
+
+    @Override
+    public int dropArchived(Instant finishedBefore) {
+        return 0;
+    }
+
+    @Override
+    public WakeSignal listen(List<String> handlerNames) {
+        List<Handler> watched = new ArrayList<>();
+        for (String name : new LinkedHashSet<>(handlerNames)) {
+            watched.add(handler(name));
+        }
+        return new Signal(watched);
+    }
+
+    @Nullable
+    public TaskStatus getStatus(UUID uuid) {
+        Entry entry = byUuid.get(uuid);
+        return entry == null ? null : entry.state.get().status;
+    }
+
+    public boolean isLocked(UUID uuid) {
+        Entry entry = byUuid.get(uuid);
+        return entry != null && entry.state.get().locked;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (wakeMonitor) {
+            wakeMonitor.notifyAll();
+        }
+    }
+
+    private List<Entry> prepare(String defaultHandler, List<NewTask> tasks) throws SQLException, TaskPayloadException {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>(tasks.size());
+        for (NewTask task : tasks) {
+            String handlerName = TaskInserter.handler(task, defaultHandler);
+            if (handlerName == null) {
+                throw new SQLException("null value in column \"handler_name\" violates not-null constraint");
+            }
+            String payload = TaskInserter.serialize(task.getPayload());
+            long runAt = task.getRunAt() == null ? now : task.getRunAt().toEpochMilli();
+            entries.add(new Entry(nextIndex.incrementAndGet(), UUID.randomUUID(), task.getType(), payload, now / 1000,
+                    task.getOwner(), task.getDescription(), handlerName, new State(TaskStatus.NEW, false, runAt, 0, null, 0)));
+        }
+        return entries;
+    }
+
+    private void publish(List<Entry> entries) {
+        Set<Handler> touched = new LinkedHashSet<>();
+        for (Entry entry : entries) {
+            byUuid.put(entry.uuid, entry);
+            byIndex.put(entry.index, entry);
+            Handler handler = handler(entry.handlerName);
+            handler.offer(entry, entry.state.get().runAt);
+            touched.add(handler);
+        }
+        touched.forEach(this::wake);
+    }
+
+    // applies the update unless it returns null (the row did not match), returns the written state
+    private @Nullable State change(UUID uuid, UnaryOperator<State> update) {
+        Entry entry = byUuid.get(uuid);
+        if (entry == null) { return null; }
+        while (true) {
+            State current = entry.state.get();
+            State next = update.apply(current);
+            if (next == null) { return null; }
+            if (entry.state.compareAndSet(current, next)) {
+                changed(entry, current, next);
+                return next;
+            }
+        }
+    }
+
+    private void changed(Entry entry, State previous, State next) {
+        if (next.status != TaskStatus.WORK || next.locked) {
+            inWork.remove(entry);
+        }
+        if (isFinished(next.status) && !isFinished(previous.status)) {
+            finished.offer(new Finished(System.currentTimeMillis(), entry));
+        }
+        boolean claimable = next.status == TaskStatus.NEW && !next.locked;
+        boolean wasClaimable = previous.status == TaskStatus.NEW && !previous.locked && previous.runAt == next.runAt;
+        if (claimable && !wasClaimable) {
+            Handler handler = handler(entry.handlerName);
+            handler.offer(entry, next.runAt);
+            wake(handler);
+        }
+    }
+
+    private static boolean isFinished(TaskStatus status) {
+        return status == TaskStatus.DONE || status == TaskStatus.DENY;
+    }
+
+    private Handler handler(String name) {
+        return handlers.computeIfAbsent(name, n -> new Handler());
+    }
+
+    private static List<String> handlerNames(String handlerName) {
+        return handlerName.equals("*") ? List.of("*") : List.of(handlerName, "*");
+    }
+
+    // producers only take the monitor while a listener is actually waiting
+    private void wake(Handler handler) {
+        handler.generation.incrementAndGet();
+        if (sleepers.get() > 0) {
+            synchronized (wakeMonitor) {
+                wakeMonitor.notifyAll();
+            }
+        }
+    }
+
+    private class Signal implements WakeSignal {
+        private final List<Handler> watched;
+        private final long[] seen;
+
+        private Signal(List<Handler> watched) {
+            this.watched = watched;
+            this.seen = new long[watched.size()];
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] = watched.get(i).generation.get();
+            }
+        }
+
+        // like NOTIFY, work published between two awaits wakes the next one immediately
+        @Override
+        public boolean await(long timeoutMillis) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            sleepers.incrementAndGet();
+            try {
+                synchronized (wakeMonitor) {
+                    while (!closed) {
+                        if (consume()) { return true; }
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) { return false; }
+                        wakeMonitor.wait(remaining);
+                    }
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                sleepers.decrementAndGet();
+            }
+        }
+
+        private boolean consume() {
+            boolean woken = false;
+            for (int i = 0; i < seen.length; i++) {
+                long generation = watched.get(i).generation.get();
+                if (generation != seen[i]) {
+                    seen[i] = generation;
+                    woken = true;
+                }
+            }
+            return woken;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private static final class Handler {
+        private final Map<String, Queue<Scheduled>> ready = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<Scheduled> later = new ConcurrentSkipListSet<>();
+        private final AtomicLong generation = new AtomicLong();
+
+        private void offer(Entry entry, long runAt) {
+            Scheduled scheduled = new Scheduled(runAt, entry);
+            if (runAt <= System.currentTimeMillis()) {
+                ready.computeIfAbsent(entry.type, type -> new ConcurrentLinkedQueue<>()).offer(scheduled);
+            } else {
+                later.add(scheduled);
+            }
+        }
+
+        // moves tasks whose run_at has passed to the ready queues
+        private void promote(long now) {
+            for (Iterator<Scheduled> it = later.iterator(); it.hasNext(); ) {
+                Scheduled scheduled = it.next();
+                if (scheduled.runAt > now) { break; }
+                if (later.remove(scheduled)) {
+                    ready.computeIfAbsent(scheduled.entry.type, type -> new ConcurrentLinkedQueue<>()).offer(scheduled);
+                }
+            }
+        }
+    }
+
+    private record Scheduled(long runAt, Entry entry) implements Comparable<Scheduled> {
+        // still the task's current claimable state, not a leftover of an earlier one
+        private boolean isFor(State state) {
+            return state.status == TaskStatus.NEW && !state.locked && state.runAt == runAt;
+        }
+
+        @Override
+        public int compareTo(Scheduled other) {
+            int byRunAt = Long.compare(runAt, other.runAt);
+            return byRunAt != 0 ? byRunAt : Integer.compare(entry.index, other.entry.index);
+        }
+    }
+
+    private record Finished(long at, Entry entry) { }
+
+    private static final class Entry {
+        private final int index;
+        private final UUID uuid;
+        private final String type;
+        private final String payload;
+        private final long createdAt;
+        private final String owner;
+        private final String description;
+        private final String handlerName;
+        private final AtomicReference<State> state;
+
+        private Entry(int index, UUID uuid, String type, String payload, long createdAt,
+                      String owner, String description, String handlerName, State state) {
+            this.index = index;
+            this.uuid = uuid;
+            this.type = type;
+            this.payload = payload;
+            this.createdAt = createdAt;
+            this.owner = owner;
+            this.description = description;
+            this.handlerName = handlerName;
+            this.state = new AtomicReference<>(state);
+        }
+
+        private @Nullable State update(UnaryOperator<State> update) {
+            while (true) {
+                State current = state.get();
+                State next = update.apply(current);
+                if (next == null) { return null; }
+                if (state.compareAndSet(current, next)) { return next; }
+            }
+        }
+    }
+
+    private record State(TaskStatus status, boolean locked, long runAt, int attempts,
+                         @Nullable String claimedBy, long leaseUntil) {
+        private State with(TaskStatus status, boolean locked) {
+            return new State(status, locked, runAt, attempts, claimedBy, leaseUntil);
+        }
+    }
+}
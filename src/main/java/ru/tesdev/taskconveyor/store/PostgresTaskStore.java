@@ -0,0 +1,486 @@
+package ru.tesdev.taskconveyor.store;
+
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.services.ConnectionPool;
+import ru.tesdev.taskconveyor.services.NotificationListener;
+import ru.tesdev.taskconveyor.services.SchemaMigrator;
+import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.PoolStats;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The taskconveyor schema in PostgreSQL, every operation is one statement on a pooled connection
+public class PostgresTaskStore implements TaskStore {
+    // one archiver at a time across conveyors, the others skip their turn
+    private static final long ARCHIVE_LOCK_KEY = 0x7463_5f61_7263_6869L; // "tc_archi"
+    private static final DateTimeFormatter PARTITION_DAY = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final String PARTITION_PREFIX = "tc_tasks_archive_";
+    // finished rows are done or deny, rows finished before finished_at existed count from their run_at
+    private static final String FINISHED = "status IN ('done', 'deny')";
+    private static final String FINISHED_AT = "COALESCE(finished_at, run_at)";
+
+    private final ConnectionPool pool;
+    // archive partitions known to exist, by their first day
+    private final Set<LocalDate> partitions = ConcurrentHashMap.newKeySet();
+
+    public PostgresTaskStore(DatabaseConfig config) {
+        this(new ConnectionPool(config));
+    }
+
+    public PostgresTaskStore(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+
+    @Override
+    public void prepare() throws SQLException {
+        new SchemaMigrator(pool).migrate();
+    }
+
+    // own and shared ('*') rows are picked separately so each side walks the partial due index in order.
+    // The statement commits on its own and is read in full before any row reaches the sink, so workers
+    // never touch rows the claim still locks
+    @Override
+    public int claim(ClaimRequest request, ClaimSink sink) throws SQLException {
+        String typeFilter = request.include() ? "type = ANY(?::text[])" : "type <> ALL(?::text[])";
+        try (Connection connection = pool.acquire()) {
+            int claimed = 0;
+            try (PreparedStatement stmt = connection.prepareStatement(String.format("""
+                WITH own AS (
+                    SELECT index, run_at FROM taskconveyor.tc_tasks
+                    WHERE handler_name = ? AND status = 'new' AND locked = false AND run_at <= NOW() AND %1$s
+                    ORDER BY run_at, index
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                ), shared AS (
+                    SELECT index, run_at FROM taskconveyor.tc_tasks
+                    WHERE handler_name = '*' AND status = 'new' AND locked = false AND run_at <= NOW() AND %1$s
+                    ORDER BY run_at, index
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                ), picked AS (
+                    SELECT index, run_at FROM own
+                    UNION ALL
+                    SELECT index, run_at FROM shared
+                    ORDER BY run_at, index
+                    LIMIT ?
+                ), claimed AS (
+                    UPDATE taskconveyor.tc_tasks
+                    SET status = 'work', attempts = attempts + 1,
+                        claimed_by = ?, lease_until = NOW() + ? * INTERVAL '1 millisecond'
+                    WHERE index IN (SELECT index FROM picked)
+                    RETURNING *
+                )
+                SELECT * FROM claimed ORDER BY run_at, index
+            """, typeFilter))) {
+                Array types = connection.createArrayOf("text", request.types().toArray());
+                stmt.setString(1, request.handlerName());
+                stmt.setArray(2, types);
+                stmt.setInt(3, request.limit());
+                stmt.setArray(4, types);
+                stmt.setInt(5, request.limit());
+                stmt.setInt(6, request.limit());
+                stmt.setString(7, request.nodeId());
+                stmt.setLong(8, request.leaseMillis());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        claimed++;
+                        sink.accept(new ClaimedTask(
+                                rs.getInt("index"),
+                                rs.getObject("uuid", UUID.class),
+                                rs.getString("type"),
+                                rs.getString("payload"),
+                                rs.getString("status"),
+                                rs.getLong("created_at"),
+                                rs.getString("owner"),
+                                rs.getString("description"),
+                                rs.getBoolean("locked"),
+                                rs.getInt("attempts")));
+                    }
+                }
+            }
+            return claimed;
+        }
+    }
+
+    @Override
+    public long nextDue(String handlerName) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                SELECT LEAST(
+                    (SELECT run_at FROM taskconveyor.tc_tasks
+                     WHERE handler_name = ? AND status = 'new' AND locked = false AND run_at > NOW()
+                     ORDER BY run_at LIMIT 1),
+                    (SELECT run_at FROM taskconveyor.tc_tasks
+                     WHERE handler_name = '*' AND status = 'new' AND locked = false AND run_at > NOW()
+                     ORDER BY run_at LIMIT 1)
+                )
+            """)) {
+                stmt.setString(1, handlerName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    Timestamp next = rs.getTimestamp(1);
+                    return next == null ? Long.MAX_VALUE : next.getTime();
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<EnqueuedTask> insert(String defaultHandler, List<NewTask> tasks) throws SQLException, TaskPayloadException {
+        try (Connection connection = pool.acquire()) {
+            return TaskInserter.insert(connection, defaultHandler, tasks);
+        }
+    }
+
+    @Override
+    public void transition(List<Transition> transitions) throws SQLException {
+        if (transitions.isEmpty()) { return; }
+        try (Connection connection = pool.acquire()) {
+            if (transitions.size() == 1) {
+                Transition transition = transitions.get(0);
+                try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET status = ?::taskconveyor.task_status, locked = ?, finished_at = " + finishedAt(transition.status()) + " WHERE uuid = ? AND locked = false")) {
+                    stmt.setString(1, transition.status().name().toLowerCase());
+                    stmt.setBoolean(2, transition.lock());
+                    stmt.setObject(3, transition.uuid());
+                    stmt.executeUpdate();
+                }
+                return;
+            }
+            UUID[] uuids = new UUID[transitions.size()];
+            String[] statuses = new String[transitions.size()];
+            Boolean[] locks = new Boolean[transitions.size()];
+            for (int i = 0; i < transitions.size(); i++) {
+                Transition transition = transitions.get(i);
+                uuids[i] = transition.uuid();
+                statuses[i] = transition.status().name().toLowerCase();
+                locks[i] = transition.lock();
+            }
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                UPDATE taskconveyor.tc_tasks AS t
+                SET status = v.status::taskconveyor.task_status, locked = v.locked,
+                    finished_at = CASE WHEN v.status IN ('done', 'deny') THEN NOW() END
+                FROM unnest(?::uuid[], ?::text[], ?::boolean[]) AS v(uuid, status, locked)
+                WHERE t.uuid = v.uuid AND t.locked = false
+            """)) {
+                stmt.setArray(1, connection.createArrayOf("uuid", uuids));
+                stmt.setArray(2, connection.createArrayOf("text", statuses));
+                stmt.setArray(3, connection.createArrayOf("boolean", locks));
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    // the parent is updated first so its row lock orders concurrent completions, children commit with it
+    @Override
+    public @Nullable List<EnqueuedTask> complete(UUID parent, TaskStatus status, String defaultHandler, List<NewTask> children)
+            throws SQLException, TaskPayloadException {
+        try (Connection connection = pool.acquire()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET status = ?::taskconveyor.task_status, locked = true, finished_at = " + finishedAt(status) + " WHERE uuid = ? AND locked = false")) {
+                    stmt.setString(1, status.name().toLowerCase());
+                    stmt.setObject(2, parent);
+                    if (stmt.executeUpdate() == 0) {
+                        connection.rollback();
+                        return null;
+                    }
+                }
+                List<EnqueuedTask> enqueued = TaskInserter.insert(connection, defaultHandler, children);
+                connection.commit();
+                return enqueued;
+            } catch (SQLException | TaskPayloadException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public void schedule(UUID uuid, Instant runAt) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                WITH scheduled AS (
+                    UPDATE taskconveyor.tc_tasks
+                    SET status = 'new', run_at = ?, claimed_by = NULL, lease_until = NULL
+                    WHERE uuid = ? AND locked = false
+                    RETURNING handler_name
+                )
+                SELECT pg_notify(taskconveyor.tc_channel(handler_name), '') FROM scheduled
+            """)) {
+                stmt.setObject(1, OffsetDateTime.ofInstant(runAt, ZoneOffset.UTC));
+                stmt.setObject(2, uuid);
+                stmt.executeQuery().close();
+            }
+        }
+    }
+
+    @Override
+    public void updateStatus(UUID uuid, TaskStatus status) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET status = ?::taskconveyor.task_status, finished_at = " + finishedAt(status) + " WHERE uuid = ? AND locked = false")) {
+                stmt.setString(1, status.name().toLowerCase());
+                stmt.setObject(2, uuid);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public void setLock(UUID uuid, boolean lock) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement("UPDATE taskconveyor.tc_tasks SET locked = ? WHERE uuid = ?")) {
+                stmt.setBoolean(1, lock);
+                stmt.setObject(2, uuid);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public int renewLeases(String nodeId, Integer[] indexes, long leaseMillis) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                UPDATE taskconveyor.tc_tasks
+                SET lease_until = NOW() + ? * INTERVAL '1 millisecond'
+                WHERE index = ANY(?::int[]) AND claimed_by = ? AND status = 'work' AND locked = false
+            """)) {
+                stmt.setLong(1, leaseMillis);
+                stmt.setArray(2, connection.createArrayOf("integer", indexes));
+                stmt.setString(3, nodeId);
+                return stmt.executeUpdate();
+            }
+        }
+    }
+
+    // walks the partial lease index from the oldest expiry, listeners are woken for every handler that got tasks back
+    @Override
+    public int reclaimExpired(String handlerName, int limit) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            List<String> handlers = new ArrayList<>();
+            int reaped = 0;
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                WITH expired AS (
+                    SELECT index FROM taskconveyor.tc_tasks
+                    WHERE status = 'work' AND locked = false AND lease_until < NOW()
+                        AND (handler_name = ? OR handler_name = '*')
+                    ORDER BY lease_until
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                ), reaped AS (
+                    UPDATE taskconveyor.tc_tasks SET status = 'new', claimed_by = NULL, lease_until = NULL
+                    WHERE index IN (SELECT index FROM expired)
+                    RETURNING handler_name
+                )
+                SELECT handler_name, COUNT(*) FROM reaped GROUP BY handler_name
+            """)) {
+                stmt.setString(1, handlerName);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handlers.add(rs.getString(1));
+                        reaped += rs.getInt(2);
+                    }
+                }
+            }
+            for (String handler : handlers) {
+                try (PreparedStatement stmt = connection.prepareStatement("SELECT pg_notify(?, '')")) {
+                    stmt.setString(1, NotificationListener.channel(handler));
+                    stmt.execute();
+                }
+            }
+            return reaped;
+        }
+    }
+
+    // walks the partial finished index from the oldest row, rows locked by anyone else are left for the next batch
+    @Override
+    public int purgeFinished(Instant finishedBefore, int limit) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            try (PreparedStatement stmt = connection.prepareStatement(String.format("""
+                DELETE FROM taskconveyor.tc_tasks WHERE index IN (
+                    SELECT index FROM taskconveyor.tc_tasks
+                    WHERE %1$s AND %2$s < ?
+                    ORDER BY %2$s
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+            """, FINISHED, FINISHED_AT))) {
+                stmt.setObject(1, OffsetDateTime.ofInstant(finishedBefore, ZoneOffset.UTC));
+                stmt.setInt(2, limit);
+                return stmt.executeUpdate();
+            }
+        }
+    }
+
+    // the batch is locked first so the partitions of its days can be created before the rows move
+    @Override
+    public int archiveFinished(Instant finishedBefore, int limit) throws SQLException {
+        try (Connection connection = pool.acquire()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!tryArchiveLock(connection)) {
+                    connection.rollback();
+                    return 0;
+                }
+                List<Integer> indexes = new ArrayList<>();
+                Set<LocalDate> days = new HashSet<>();
+                try (PreparedStatement stmt = connection.prepareStatement(String.format("""
+                    SELECT index, %2$s FROM taskconveyor.tc_tasks
+                    WHERE %1$s AND %2$s < ?
+                    ORDER BY %2$s
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                """, FINISHED, FINISHED_AT))) {
+                    stmt.setObject(1, OffsetDateTime.ofInstant(finishedBefore, ZoneOffset.UTC));
+                    stmt.setInt(2, limit);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            indexes.add(rs.getInt(1));
+                            days.add(rs.getObject(2, OffsetDateTime.class).atZoneSameInstant(ZoneOffset.UTC).toLocalDate());
+                        }
+                    }
+                }
+                if (indexes.isEmpty()) {
+                    connection.rollback();
+                    return 0;
+                }
+                for (LocalDate day : days) {
+                    createPartition(connection, day);
+                }
+                int moved;
+                try (PreparedStatement stmt = connection.prepareStatement(String.format("""
+                    WITH moved AS (
+                        DELETE FROM taskconveyor.tc_tasks WHERE index = ANY(?::int[])
+                        RETURNING index, uuid, type, payload, status, created_at, owner, description,
+                            handler_name, attempts, run_at, %1$s AS finished_at
+                    )
+                    INSERT INTO taskconveyor.tc_tasks_archive (index, uuid, type, payload, status, created_at, owner,
+                        description, handler_name, attempts, run_at, finished_at)
+                    SELECT * FROM moved
+                """, FINISHED_AT))) {
+                    stmt.setArray(1, connection.createArrayOf("integer", indexes.toArray()));
+                    moved = stmt.executeUpdate();
+                }
+                connection.commit();
+                return moved;
+            } catch (SQLException e) {
+                connection.rollback();
+                // a partition created by the rolled back transaction does not exist
+                partitions.clear();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // a partition goes once its whole day is older than finishedBefore
+    @Override
+    public int dropArchived(Instant finishedBefore) throws SQLException {
+        LocalDate keepFrom = finishedBefore.atZone(ZoneOffset.UTC).toLocalDate();
+        try (Connection connection = pool.acquire()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!tryArchiveLock(connection)) {
+                    connection.rollback();
+                    return 0;
+                }
+                List<String> expired = new ArrayList<>();
+                try (PreparedStatement stmt = connection.prepareStatement("""
+                    SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                    WHERE i.inhparent = 'taskconveyor.tc_tasks_archive'::regclass
+                """);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String name = rs.getString(1);
+                        if (!name.startsWith(PARTITION_PREFIX)) { continue; }
+                        LocalDate day = LocalDate.parse(name.substring(PARTITION_PREFIX.length()), DateTimeFormatter.BASIC_ISO_DATE);
+                        if (day.isBefore(keepFrom)) {
+                            expired.add(name);
+                            partitions.remove(day);
+                        }
+                    }
+                }
+                for (String name : expired) {
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("DROP TABLE IF EXISTS taskconveyor." + name);
+                    }
+                }
+                connection.commit();
+                return expired.size();
+            } catch (SQLException e) {
+                connection.rollback();
+                partitions.clear();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static boolean tryArchiveLock(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_xact_lock(" + ARCHIVE_LOCK_KEY + ")")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    private void createPartition(Connection connection, LocalDate day) throws SQLException {
+        if (partitions.contains(day)) { return; }
+        Instant from = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS taskconveyor.%s%s PARTITION OF taskconveyor.tc_tasks_archive
+                FOR VALUES FROM ('%s') TO ('%s')
+            """, PARTITION_PREFIX, PARTITION_DAY.format(from), from, from.plus(1, ChronoUnit.DAYS)));
+        }
+        partitions.add(day);
+    }
+
+    private static String finishedAt(TaskStatus status) {
+        return status == TaskStatus.DONE || status == TaskStatus.DENY ? "NOW()" : "NULL";
+    }
+
+    @Override
+    public WakeSignal listen(List<String> handlerNames) {
+        return new NotificationListener(pool.getConfig(), handlerNames);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,171 @@
+package ru.tesdev.taskconveyor.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Writes producer batches in one round-trip: an unnest insert for ordinary batches,
+// binary COPY for large ones. UUIDs are generated here so the result can be matched back to the input.
+class TaskInserter {
+    private static final ObjectWriter PAYLOAD_WRITER = new ObjectMapper().writer();
+    // below this a single unnest insert is as fast as COPY and returns the indexes directly
+    static final int COPY_THRESHOLD = 5_000;
+
+    private static final byte[] COPY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int COPY_CHUNK = 256 * 1024;
+
+    private TaskInserter() { }
+
+    static List<EnqueuedTask> insert(Connection connection, String defaultHandler, List<NewTask> tasks)
+            throws SQLException, TaskPayloadException {
+        if (tasks.isEmpty()) { return List.of(); }
+        UUID[] uuids = new UUID[tasks.size()];
+        String[] payloads = new String[tasks.size()];
+        boolean scheduled = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            uuids[i] = UUID.randomUUID();
+            payloads[i] = serialize(tasks.get(i).getPayload());
+            scheduled |= tasks.get(i).getRunAt() != null;
+        }
+        // COPY cannot fall back to the run_at default per row, scheduled batches always take the insert
+        if (tasks.size() >= COPY_THRESHOLD && !scheduled) {
+            return copy(connection, defaultHandler, tasks, uuids, payloads);
+        }
+        return insertRows(connection, defaultHandler, tasks, uuids, payloads);
+    }
+
+    private static List<EnqueuedTask> insertRows(Connection connection, String defaultHandler, List<NewTask> tasks,
+                                                 UUID[] uuids, String[] payloads) throws SQLException {
+        int size = tasks.size();
+        String[] types = new String[size];
+        String[] owners = new String[size];
+        String[] descriptions = new String[size];
+        String[] handlers = new String[size];
+        String[] runAts = new String[size];
+        for (int i = 0; i < size; i++) {
+            NewTask task = tasks.get(i);
+            types[i] = task.getType();
+            owners[i] = task.getOwner();
+            descriptions[i] = task.getDescription();
+            handlers[i] = handler(task, defaultHandler);
+            runAts[i] = task.getRunAt() == null ? null : task.getRunAt().toString();
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("""
+            INSERT INTO taskconveyor.tc_tasks (uuid, type, payload, owner, description, handler_name, run_at)
+            SELECT v.uuid, v.type, v.payload, v.owner, v.description, v.handler_name, COALESCE(v.run_at, NOW())
+            FROM unnest(?::uuid[], ?::text[], ?::json[], ?::text[], ?::text[], ?::text[], ?::timestamptz[])
+                AS v(uuid, type, payload, owner, description, handler_name, run_at)
+            RETURNING index, uuid
+        """)) {
+            stmt.setArray(1, connection.createArrayOf("uuid", uuids));
+            stmt.setArray(2, connection.createArrayOf("text", types));
+            stmt.setArray(3, connection.createArrayOf("text", payloads));
+            stmt.setArray(4, connection.createArrayOf("text", owners));
+            stmt.setArray(5, connection.createArrayOf("text", descriptions));
+            stmt.setArray(6, connection.createArrayOf("text", handlers));
+            stmt.setArray(7, connection.createArrayOf("text", runAts));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return collect(rs, uuids);
+            }
+        }
+    }
+
+    private static List<EnqueuedTask> copy(Connection connection, String defaultHandler, List<NewTask> tasks,
+                                           UUID[] uuids, String[] payloads) throws SQLException {
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                "COPY taskconveyor.tc_tasks (uuid, type, payload, owner, description, handler_name) FROM STDIN (FORMAT binary)");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(COPY_CHUNK + 4096);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(COPY_HEADER);
+            for (int i = 0; i < tasks.size(); i++) {
+                NewTask task = tasks.get(i);
+                out.writeShort(6);
+                out.writeInt(16);
+                out.writeLong(uuids[i].getMostSignificantBits());
+                out.writeLong(uuids[i].getLeastSignificantBits());
+                writeText(out, task.getType());
+                // the binary form of json is its text
+                writeText(out, payloads[i]);
+                writeText(out, task.getOwner());
+                writeText(out, task.getDescription());
+                writeText(out, handler(task, defaultHandler));
+                if (bytes.size() >= COPY_CHUNK) {
+                    copy.writeToCopy(bytes.toByteArray(), 0, bytes.size());
+                    bytes.reset();
+                }
+            }
+            out.writeShort(-1);
+            copy.writeToCopy(bytes.toByteArray(), 0, bytes.size());
+            copy.endCopy();
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e);
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+        // COPY has no RETURNING, the indexes are read back through the unique uuid index
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT index, uuid FROM taskconveyor.tc_tasks WHERE uuid = ANY(?::uuid[])")) {
+            stmt.setArray(1, connection.createArrayOf("uuid", uuids));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return collect(rs, uuids);
+            }
+        }
+    }
+
+    // results come back in input order regardless of the order the database returned them in
+    private static List<EnqueuedTask> collect(ResultSet rs, UUID[] uuids) throws SQLException {
+        Map<UUID, Integer> indexes = new HashMap<>(uuids.length * 2);
+        while (rs.next()) {
+            indexes.put(rs.getObject(2, UUID.class), rs.getInt(1));
+        }
+        List<EnqueuedTask> result = new ArrayList<>(uuids.length);
+        for (UUID uuid : uuids) {
+            result.add(new EnqueuedTask(indexes.get(uuid), uuid));
+        }
+        return result;
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    static String handler(NewTask task, String defaultHandler) {
+        return task.getHandlerName() != null ? task.getHandlerName() : defaultHandler;
+    }
+
+    static String serialize(Object payload) throws TaskPayloadException {
+        try {
+            return PAYLOAD_WRITER.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new TaskPayloadException(e.getOriginalMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.tesdev.taskconveyor.store;
+
+import org.jetbrains.annotations.Nullable;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+// Storage behind TaskConveyor and TaskService. Every backend keeps the semantics of the PostgreSQL schema:
+// a claim moves due, unlocked new tasks of a handler (or '*') to work under a lease, writes guarded by
+// "locked = false" skip locked tasks, and any write that leaves a locked task locked fails ("Row locked").
+public interface TaskStore extends AutoCloseable {
+    // creates or upgrades whatever the backend needs, safe to call from every conveyor
+    void prepare() throws SQLException;
+
+    // claims up to request.limit() tasks, each one is handed to the sink once its claim is committed
+    int claim(ClaimRequest request, ClaimSink sink) throws SQLException;
+
+    // epoch millis of the earliest new task of the handler (or '*') that is not due yet, Long.MAX_VALUE when none
+    long nextDue(String handlerName) throws SQLException;
+
+    // results are in input order, tasks without a handler name go to defaultHandler
+    List<EnqueuedTask> insert(String defaultHandler, List<NewTask> tasks) throws SQLException, TaskPayloadException;
+
+    // status and lock of unlocked tasks, written together
+    void transition(List<Transition> transitions) throws SQLException;
+
+    // the parent's transition and its children in one unit, null (and nothing written) when the parent is already locked
+    @Nullable List<EnqueuedTask> complete(UUID parent, TaskStatus status, String defaultHandler, List<NewTask> children)
+            throws SQLException, TaskPayloadException;
+
+    // back to new with a later run_at, listeners of its handler are woken
+    void schedule(UUID uuid, Instant runAt) throws SQLException;
+
+    void updateStatus(UUID uuid, TaskStatus status) throws SQLException;
+
+    void setLock(UUID uuid, boolean lock) throws SQLException;
+
+    // extends the lease of the given tasks while they are still in work under nodeId
+    int renewLeases(String nodeId, Integer[] indexes, long leaseMillis) throws SQLException;
+
+    // returns up to limit tasks of the handler (or '*') whose lease ran out to new and wakes their listeners
+    int reclaimExpired(String handlerName, int limit) throws SQLException;
+
+    // deletes up to limit finished (done or deny) tasks that finished before the instant, oldest first
+    int purgeFinished(Instant finishedBefore, int limit) throws SQLException;
+
+    // moves up to limit finished tasks that finished before the instant to the archive, oldest first.
+    // Stores without an archive delete them
+    int archiveFinished(Instant finishedBefore, int limit) throws SQLException;
+
+    // drops archived tasks that finished before the instant, returns the number of partitions dropped
+    int dropArchived(Instant finishedBefore) throws SQLException;
+
+    // wakeups for new work of the given handlers
+    WakeSignal listen(List<String> handlerNames);
+
+    @Override
+    void close();
+
+    // include == true claims only the listed types, include == false everything but them
+    record ClaimRequest(String handlerName, boolean include, List<String> types, int limit,
+                        String nodeId, long leaseMillis) { }
+
+    // a claimed task as stored, status is the raw stored value
+    record ClaimedTask(int index, UUID uuid, String type, String payload, String status, long createdAt,
+                       String owner, String description, boolean locked, int attempts) { }
+
+    record Transition(UUID uuid, TaskStatus status, boolean lock) { }
+
+    @FunctionalInterface
+    interface ClaimSink {
+        void accept(ClaimedTask task);
+    }
+
+    interface WakeSignal extends AutoCloseable {
+        // blocks until new work may be there or the timeout passes, true if woken
+        boolean await(long timeoutMillis) throws SQLException;
+
+        @Override
+        void close();
+    }
+}
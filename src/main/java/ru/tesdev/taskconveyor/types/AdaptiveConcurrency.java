@@ -0,0 +1,109 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Duration;
+
+// AIMD concurrency limit of one type, re-evaluated once per window: the limit grows by `increase` while it is
+// what keeps claimed tasks waiting, and is multiplied by `backoff` when the window's executions were slower than
+// latencyTolerance times their usual latency, failed or were denied too often, or database writes slowed down
+public class AdaptiveConcurrency {
+    private final int min;
+    private final int max;
+    private int initial;
+    private int increase = 1;
+    private double backoff = 0.75;
+    private double latencyTolerance = 2;
+    private double maxErrorRate = 0.1;
+    private double dbLatencyTolerance = 3;
+    private long windowMillis = 1_000;
+
+    private AdaptiveConcurrency(int min, int max) {
+        if (min < 1 || max < min) { throw new IllegalArgumentException("Concurrency bounds must be positive and min <= max"); }
+        this.min = min;
+        this.max = max;
+        this.initial = min;
+    }
+
+    public static AdaptiveConcurrency aimd(int min, int max) {
+        return new AdaptiveConcurrency(min, max);
+    }
+
+    public AdaptiveConcurrency initial(int initial) {
+        if (initial < min || initial > max) { throw new IllegalArgumentException("Initial limit must be within min and max"); }
+        this.initial = initial;
+        return this;
+    }
+
+    public AdaptiveConcurrency increase(int increase) {
+        if (increase < 1) { throw new IllegalArgumentException("Increase must be positive"); }
+        this.increase = increase;
+        return this;
+    }
+
+    public AdaptiveConcurrency backoff(double backoff) {
+        if (backoff <= 0 || backoff >= 1) { throw new IllegalArgumentException("Backoff must be between 0 and 1"); }
+        this.backoff = backoff;
+        return this;
+    }
+
+    // usual latency is the lowest window mean seen, drifting up slowly so a lasting change becomes the new usual
+    public AdaptiveConcurrency latencyTolerance(double latencyTolerance) {
+        if (latencyTolerance <= 1) { throw new IllegalArgumentException("Latency tolerance must be above 1"); }
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    // share of executions that threw or timed out, tasks the executor denied count as successes
+    public AdaptiveConcurrency maxErrorRate(double maxErrorRate) {
+        if (maxErrorRate < 0 || maxErrorRate > 1) { throw new IllegalArgumentException("Error rate must be between 0 and 1"); }
+        this.maxErrorRate = maxErrorRate;
+        return this;
+    }
+
+    public AdaptiveConcurrency dbLatencyTolerance(double dbLatencyTolerance) {
+        if (dbLatencyTolerance <= 1) { throw new IllegalArgumentException("Database latency tolerance must be above 1"); }
+        this.dbLatencyTolerance = dbLatencyTolerance;
+        return this;
+    }
+
+    public AdaptiveConcurrency window(Duration window) {
+        if (window.toMillis() < 10) { throw new IllegalArgumentException("Window must be at least 10ms"); }
+        this.windowMillis = window.toMillis();
+        return this;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public int getInitial() {
+        return initial;
+    }
+
+    public int getIncrease() {
+        return increase;
+    }
+
+    public double getBackoff() {
+        return backoff;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public double getDbLatencyTolerance() {
+        return dbLatencyTolerance;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+}
@@ -5,14 +5,41 @@ public class DatabaseConfig {
     private final String user;
     private final String password;
 
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
     public DatabaseConfig(
             String connectUrl,
             String user,
             String password
     ) {
+        this(connectUrl, user, password, 1, 10, 60_000, 30_000, 2);
+    }
+
+    public DatabaseConfig(
+            String connectUrl,
+            String user,
+            String password,
+            int minPoolSize,
+            int maxPoolSize,
+            long idleTimeoutMillis,
+            long acquireTimeoutMillis,
+            int validationTimeoutSeconds
+    ) {
+        if (minPoolSize < 0 || maxPoolSize < 1 || minPoolSize > maxPoolSize) {
+            throw new IllegalArgumentException(String.format("Invalid pool size min=%d max=%d", minPoolSize, maxPoolSize));
+        }
         this.connectUrl = connectUrl;
         this.user = user;
         this.password = password;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
     }
 
     public String getConnectUrl() {
@@ -26,4 +53,24 @@ public class DatabaseConfig {
     public String getPassword() {
         return password;
     }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
 }
@@ -0,0 +1,8 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.util.UUID;
+
+public record EnqueuedTask(
+        int index,
+        UUID uuid
+) { }
@@ -0,0 +1,60 @@
+package ru.tesdev.taskconveyor.types;
+
+public class EventDispatchOptions {
+    private int queueSize = 8192;
+    private int maxBatchSize = 256;
+    private EventOverflowPolicy overflowPolicy = EventOverflowPolicy.DROP;
+    private EventOrdering ordering = EventOrdering.GLOBAL;
+    private int dispatcherThreads = 1;
+
+    public static EventDispatchOptions defaults() {
+        return new EventDispatchOptions();
+    }
+
+    // per dispatcher thread
+    public EventDispatchOptions queueSize(int queueSize) {
+        if (queueSize < 1) { throw new IllegalArgumentException("Queue size must be positive"); }
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    // most task ends handed to one onTasksEnd call
+    public EventDispatchOptions maxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) { throw new IllegalArgumentException("Batch size must be positive"); }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public EventDispatchOptions overflowPolicy(EventOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    // GLOBAL always dispatches from a single thread
+    public EventDispatchOptions ordering(EventOrdering ordering, int dispatcherThreads) {
+        if (dispatcherThreads < 1) { throw new IllegalArgumentException("Dispatcher threads must be positive"); }
+        this.ordering = ordering;
+        this.dispatcherThreads = ordering == EventOrdering.GLOBAL ? 1 : dispatcherThreads;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public EventOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public EventOrdering getOrdering() {
+        return ordering;
+    }
+
+    public int getDispatcherThreads() {
+        return dispatcherThreads;
+    }
+}
@@ -0,0 +1,8 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum EventOrdering {
+    // one dispatcher thread, listeners see events in the order they were raised
+    GLOBAL,
+    // events are spread over the dispatcher threads by task type, ordered within a type only
+    PER_TYPE
+}
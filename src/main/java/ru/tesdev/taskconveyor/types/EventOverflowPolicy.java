@@ -0,0 +1,10 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum EventOverflowPolicy {
+    // the new event is dropped and counted
+    DROP,
+    // the oldest queued event makes room and is counted as dropped
+    DROP_OLDEST,
+    // the worker waits for the dispatcher to free a slot, listeners then pace the conveyor again
+    BLOCK
+}
@@ -0,0 +1,10 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum FlushPolicy {
+    // every completion is written by its own statement before done()/deny() return
+    SYNC,
+    // completions are batched, done()/deny() return once the batch holding them is written
+    GROUP_COMMIT,
+    // completions are batched, done()/deny() return immediately
+    ASYNC
+}
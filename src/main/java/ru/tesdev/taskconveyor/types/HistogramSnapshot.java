@@ -0,0 +1,16 @@
+package ru.tesdev.taskconveyor.types;
+
+// latency values are nanoseconds, percentiles are bucket upper bounds (about 6% relative error)
+public record HistogramSnapshot(
+        long count,
+        long sum,
+        long p50,
+        long p90,
+        long p99,
+        long p999,
+        long max
+) {
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,8 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum LogOverflowPolicy {
+    // the calling thread waits for the writer to free a slot
+    BLOCK,
+    // the event is dropped and counted
+    DROP
+}
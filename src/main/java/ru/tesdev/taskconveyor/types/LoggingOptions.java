@@ -0,0 +1,54 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Duration;
+
+public class LoggingOptions {
+    private int bufferSize = 8192;
+    private LogOverflowPolicy overflowPolicy = LogOverflowPolicy.DROP;
+    private long rotateBytes = -1;
+    private long rotateIntervalMillis = -1;
+
+    public static LoggingOptions defaults() {
+        return new LoggingOptions();
+    }
+
+    // ring buffer slots, rounded up to a power of two
+    public LoggingOptions bufferSize(int bufferSize) {
+        if (bufferSize < 2) { throw new IllegalArgumentException("Buffer size must be at least 2"); }
+        this.bufferSize = Integer.highestOneBit(bufferSize - 1) << 1;
+        return this;
+    }
+
+    public LoggingOptions overflowPolicy(LogOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public LoggingOptions rotateAfterBytes(long bytes) {
+        if (bytes < 1) { throw new IllegalArgumentException("Rotation size must be positive"); }
+        this.rotateBytes = bytes;
+        return this;
+    }
+
+    public LoggingOptions rotateEvery(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) { throw new IllegalArgumentException("Rotation interval must be positive"); }
+        this.rotateIntervalMillis = interval.toMillis();
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public LogOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getRotateBytes() {
+        return rotateBytes;
+    }
+
+    public long getRotateIntervalMillis() {
+        return rotateIntervalMillis;
+    }
+}
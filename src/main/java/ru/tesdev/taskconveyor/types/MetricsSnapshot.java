@@ -0,0 +1,18 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.util.Map;
+
+// counters are cumulative since the conveyor started, rates come from the difference of two snapshots
+public record MetricsSnapshot(
+        long uptimeMillis,
+        long polls,
+        long reclaimed,
+        long archived,
+        long purged,
+        HistogramSnapshot pollDuration,
+        HistogramSnapshot rowsPerPoll,
+        HistogramSnapshot dbWriteLatency,
+        long droppedEvents,
+        HistogramSnapshot eventDispatchLag,
+        Map<String, TypeMetrics> types
+) { }
@@ -0,0 +1,65 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Instant;
+
+// A task for the producer API, the payload is serialized with the conveyor's shared ObjectMapper
+public class NewTask {
+    private final String type;
+    private final Object payload;
+    private final String owner;
+    private String description;
+    private String handlerName;
+    private Instant runAt;
+
+    private NewTask(String type, Object payload, String owner) {
+        if (type == null || owner == null) { throw new IllegalArgumentException("Type and owner are required"); }
+        this.type = type;
+        this.payload = payload;
+        this.owner = owner;
+    }
+
+    public static NewTask of(String type, Object payload, String owner) {
+        return new NewTask(type, payload, owner);
+    }
+
+    public NewTask description(String description) {
+        this.description = description;
+        return this;
+    }
+
+    // defaults to the handler of the conveyor enqueueing it, "*" lets every handler claim it
+    public NewTask handlerName(String handlerName) {
+        this.handlerName = handlerName;
+        return this;
+    }
+
+    // not claimed before this instant, immediately due when unset
+    public NewTask runAt(Instant runAt) {
+        this.runAt = runAt;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getHandlerName() {
+        return handlerName;
+    }
+
+    public Instant getRunAt() {
+        return runAt;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.tesdev.taskconveyor.types;
+
+public record PoolStats(
+        int active,
+        int idle,
+        int waiters,
+        long acquireCount,
+        long acquireTimeouts,
+        long avgAcquireNanos,
+        long maxAcquireNanos
+) { }
@@ -0,0 +1,10 @@
+package ru.tesdev.taskconveyor.types;
+
+public record PrefetchStats(
+        int capacity,
+        int inFlight,
+        int queued,
+        long skippedPolls,
+        long avgWaitNanos,
+        long maxWaitNanos
+) { }
@@ -0,0 +1,87 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Duration;
+
+public class RetentionPolicy {
+    private final long archiveAfterMillis;
+    private final long retainMillis;
+    private int batchSize = 500;
+    private long pauseMillis = 100;
+    private long intervalMillis = 60_000;
+    private long maxBatchMillis = 250;
+
+    private RetentionPolicy(long archiveAfterMillis, long retainMillis) {
+        this.archiveAfterMillis = archiveAfterMillis;
+        this.retainMillis = retainMillis;
+    }
+
+    // finished tasks are deleted once they finished longer ago than retain
+    public static RetentionPolicy delete(Duration retain) {
+        if (retain.isNegative() || retain.isZero()) { throw new IllegalArgumentException("Retention must be positive"); }
+        return new RetentionPolicy(-1, retain.toMillis());
+    }
+
+    // finished tasks move to tc_tasks_archive after hot, the archive keeps them for retain (by whole days)
+    public static RetentionPolicy archive(Duration hot, Duration retain) {
+        if (hot.isNegative() || retain.compareTo(hot) <= 0) {
+            throw new IllegalArgumentException("Archive delay must be non-negative and below the retention");
+        }
+        return new RetentionPolicy(hot.toMillis(), retain.toMillis());
+    }
+
+    // rows moved or deleted per statement
+    public RetentionPolicy batchSize(int batchSize) {
+        if (batchSize < 1) { throw new IllegalArgumentException("Batch size must be positive"); }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    // between two batches of one run
+    public RetentionPolicy pause(Duration pause) {
+        if (pause.isNegative()) { throw new IllegalArgumentException("Pause must not be negative"); }
+        this.pauseMillis = pause.toMillis();
+        return this;
+    }
+
+    // between runs, a run ends once nothing is left or the database gets slow
+    public RetentionPolicy interval(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) { throw new IllegalArgumentException("Interval must be positive"); }
+        this.intervalMillis = interval.toMillis();
+        return this;
+    }
+
+    // a batch taking longer ends the run early, it is taken as a sign the database is busy
+    public RetentionPolicy maxBatchTime(Duration maxBatchTime) {
+        if (maxBatchTime.isNegative() || maxBatchTime.isZero()) { throw new IllegalArgumentException("Batch time must be positive"); }
+        this.maxBatchMillis = maxBatchTime.toMillis();
+        return this;
+    }
+
+    public boolean isArchiving() {
+        return archiveAfterMillis >= 0;
+    }
+
+    public long getArchiveAfterMillis() {
+        return archiveAfterMillis;
+    }
+
+    public long getRetainMillis() {
+        return retainMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getMaxBatchMillis() {
+        return maxBatchMillis;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class RetryPolicy {
+    // every policy gives up eventually, so a task that always fails cannot be rescheduled forever
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    private long baseDelayMillis = 1_000;
+    private long maxDelayMillis = 300_000;
+    private double multiplier = 2;
+    private double jitter = 0.2;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy();
+    }
+
+    // base, base * 2, base * 4 ... capped at max
+    public static RetryPolicy exponential(Duration base, Duration max) {
+        return new RetryPolicy().delays(base, max).multiplier(2);
+    }
+
+    public static RetryPolicy fixed(Duration delay) {
+        return new RetryPolicy().delays(delay, delay).multiplier(1);
+    }
+
+    private RetryPolicy delays(Duration base, Duration max) {
+        if (base.isNegative() || max.compareTo(base) < 0) {
+            throw new IllegalArgumentException("Retry delays must be non-negative and base <= max");
+        }
+        this.baseDelayMillis = base.toMillis();
+        this.maxDelayMillis = max.toMillis();
+        return this;
+    }
+
+    public RetryPolicy multiplier(double multiplier) {
+        if (multiplier < 1) { throw new IllegalArgumentException("Multiplier must be at least 1"); }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    // each delay is spread by up to +-jitter of itself so failures of a batch do not retry in lockstep
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) { throw new IllegalArgumentException("Jitter must be between 0 and 1"); }
+        this.jitter = jitter;
+        return this;
+    }
+
+    // attempts include the first execution, the task is denied once they are used up
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) { throw new IllegalArgumentException("Max attempts must be positive"); }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public boolean exhausted(int attempts) {
+        return attempts >= maxAttempts;
+    }
+
+    // delay before the next attempt after the given number of attempts
+    public Duration delayFor(int attempts) {
+        double delay = baseDelayMillis * Math.pow(multiplier, Math.max(0, attempts - 1));
+        delay = Math.min(delay, maxDelayMillis);
+        if (jitter > 0) {
+            delay *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        }
+        return Duration.ofMillis(Math.max(0, Math.round(delay)));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
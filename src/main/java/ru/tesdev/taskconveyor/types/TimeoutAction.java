@@ -0,0 +1,8 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum TimeoutAction {
+    DENY,
+    // next attempt by the type's retry policy (or the default one, which allows RetryPolicy.DEFAULT_MAX_ATTEMPTS),
+    // denied once it is exhausted, so a task that always hangs stops taking a worker
+    RETRY
+}
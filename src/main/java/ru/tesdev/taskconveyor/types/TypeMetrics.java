@@ -0,0 +1,11 @@
+package ru.tesdev.taskconveyor.types;
+
+public record TypeMetrics(
+        long claimed,
+        long done,
+        long denied,
+        long failed,
+        long timedOut,
+        HistogramSnapshot queueLatency,
+        HistogramSnapshot executionTime
+) { }
@@ -0,0 +1,98 @@
+package ru.tesdev.taskconveyor.types;
+
+import java.time.Duration;
+
+public class TypeOptions {
+    private int priority = 0;
+    private int weight = 1;
+    private int maxConcurrency = -1;
+    private double rateLimit = -1;
+    private RetryPolicy retryPolicy;
+    private AdaptiveConcurrency adaptiveConcurrency;
+    private long timeoutMillis = -1;
+    private TimeoutAction timeoutAction = TimeoutAction.DENY;
+
+    public static TypeOptions defaults() {
+        return new TypeOptions();
+    }
+
+    // types with a higher priority are always dispatched first
+    public TypeOptions priority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    // share of workers relative to other backlogged types of the same priority
+    public TypeOptions weight(int weight) {
+        if (weight < 1) { throw new IllegalArgumentException("Weight must be positive"); }
+        this.weight = weight;
+        return this;
+    }
+
+    public TypeOptions maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) { throw new IllegalArgumentException("Max concurrency must be positive"); }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    // tasks started per second, bursts up to one second worth of tasks
+    public TypeOptions rateLimit(double tasksPerSecond) {
+        if (tasksPerSecond <= 0) { throw new IllegalArgumentException("Rate limit must be positive"); }
+        this.rateLimit = tasksPerSecond;
+        return this;
+    }
+
+    // executor exceptions reschedule the task by this policy, without one the task is denied
+    public TypeOptions retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    // the limit moves within the policy's bounds instead of staying at maxConcurrency, which still caps it when set
+    public TypeOptions adaptiveConcurrency(AdaptiveConcurrency adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        return this;
+    }
+
+    // executions running longer are cancelled: Task.isCancelled() turns true and the worker is interrupted.
+    // Once the executor returns the task is finalized by the action, unless the executor already did it
+    public TypeOptions timeout(Duration timeout, TimeoutAction action) {
+        if (timeout.isNegative() || timeout.isZero()) { throw new IllegalArgumentException("Timeout must be positive"); }
+        this.timeoutMillis = timeout.toMillis();
+        this.timeoutAction = action;
+        return this;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    // -1 when executions may run forever
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public TimeoutAction getTimeoutAction() {
+        return timeoutAction;
+    }
+
+    public AdaptiveConcurrency getAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+}
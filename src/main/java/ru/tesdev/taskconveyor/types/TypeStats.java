@@ -0,0 +1,9 @@
+package ru.tesdev.taskconveyor.types;
+
+public record TypeStats(
+        int queued,
+        int running,
+        long dispatched,
+        // -1 when unbounded
+        int concurrencyLimit
+) { }
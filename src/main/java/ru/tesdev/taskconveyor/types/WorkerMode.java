@@ -0,0 +1,5 @@
+package ru.tesdev.taskconveyor.types;
+
+public enum WorkerMode {
+    FIXED, CACHED, VIRTUAL
+}
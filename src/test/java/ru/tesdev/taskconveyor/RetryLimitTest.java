@@ -0,0 +1,123 @@
+package ru.tesdev.taskconveyor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.tesdev.taskconveyor.exceptions.TaskConveyorException;
+import ru.tesdev.taskconveyor.store.MemoryTaskStore;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.RetryPolicy;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+import ru.tesdev.taskconveyor.types.TimeoutAction;
+import ru.tesdev.taskconveyor.types.TypeOptions;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// a task that keeps failing is denied once its retry policy is used up, whichever way it is retried
+class RetryLimitTest {
+    private static final TypeOptions THREE_ATTEMPTS = TypeOptions.defaults()
+            .retryPolicy(RetryPolicy.fixed(Duration.ZERO).maxAttempts(3));
+
+    private MemoryTaskStore store;
+    private TaskConveyor conveyor;
+
+    @BeforeEach
+    void setUp() {
+        store = new MemoryTaskStore();
+        conveyor = TaskConveyor.builder("h", store).workerThreads(2).autoDone(true).pushMode(true).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        conveyor.close();
+        store.close();
+    }
+
+    @Test
+    void explicitRetriesStopAtMaxAttempts() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        conveyor.registerType("x", (task, logger) -> {
+            runs.incrementAndGet();
+            try {
+                task.retry();
+            } catch (TaskConveyorException e) {
+                throw new RuntimeException(e);
+            }
+        }, THREE_ATTEMPTS);
+        UUID uuid = start("x").get(0).uuid();
+
+        awaitStatus(uuid, TaskStatus.DENY);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void throwingExecutorStopsAtMaxAttempts() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        conveyor.registerType("x", (task, logger) -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("always");
+        }, THREE_ATTEMPTS);
+        UUID uuid = start("x").get(0).uuid();
+
+        awaitStatus(uuid, TaskStatus.DENY);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void timeoutRetriesStopAtMaxAttempts() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        conveyor.registerType("x", (task, logger) -> {
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException ignored) {
+                // cancelled by the timeout
+            }
+        }, TypeOptions.defaults()
+                .retryPolicy(RetryPolicy.fixed(Duration.ZERO).maxAttempts(2))
+                .timeout(Duration.ofMillis(50), TimeoutAction.RETRY));
+        UUID uuid = start("x").get(0).uuid();
+
+        awaitStatus(uuid, TaskStatus.DENY);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void batchRetriesStopAtMaxAttempts() throws Exception {
+        Map<UUID, AtomicInteger> runs = new ConcurrentHashMap<>();
+        conveyor.registerType("b", (tasks, result, logger) -> {
+            for (Task task : tasks) {
+                runs.computeIfAbsent(task.getId(), id -> new AtomicInteger()).incrementAndGet();
+                result.retry(task);
+            }
+        }, 10, Duration.ofMillis(20), THREE_ATTEMPTS);
+        List<EnqueuedTask> tasks = start("b", "b", "b");
+
+        for (EnqueuedTask task : tasks) {
+            awaitStatus(task.uuid(), TaskStatus.DENY);
+            assertEquals(3, runs.get(task.uuid()).get());
+        }
+    }
+
+    private List<EnqueuedTask> start(String... types) throws TaskConveyorException {
+        conveyor.infinityPolling();
+        return conveyor.enqueue(Arrays.stream(types).map(type -> NewTask.of(type, Map.of(), "o")).toList());
+    }
+
+    private void awaitStatus(UUID uuid, TaskStatus status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (store.getStatus(uuid) != status || !store.isLocked(uuid)) {
+            assertTrue(System.currentTimeMillis() < deadline, "task " + uuid + " is " + store.getStatus(uuid));
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.tesdev.taskconveyor.store;
+
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.util.UUID;
+
+class MemoryTaskStoreConformanceTest extends TaskStoreConformanceTest {
+    @Override
+    protected TaskStore createStore() {
+        return new MemoryTaskStore();
+    }
+
+    @Override
+    protected TaskStatus status(UUID uuid) {
+        return ((MemoryTaskStore) store).getStatus(uuid);
+    }
+
+    @Override
+    protected boolean locked(UUID uuid) {
+        return ((MemoryTaskStore) store).isLocked(uuid);
+    }
+}
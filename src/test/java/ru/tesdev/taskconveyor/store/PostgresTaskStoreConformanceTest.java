@@ -0,0 +1,52 @@
+package ru.tesdev.taskconveyor.store;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.tesdev.taskconveyor.types.DatabaseConfig;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.UUID;
+
+// runs against a scratch database given by -Dtc.test.url, the taskconveyor schema is dropped before every test
+@EnabledIfSystemProperty(named = "tc.test.url", matches = ".+")
+class PostgresTaskStoreConformanceTest extends TaskStoreConformanceTest {
+    private static final String URL = System.getProperty("tc.test.url");
+    private static final String USER = System.getProperty("tc.test.user", "postgres");
+    private static final String PASSWORD = System.getProperty("tc.test.password", "");
+
+    @Override
+    protected TaskStore createStore() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS taskconveyor CASCADE");
+        }
+        PostgresTaskStore store = new PostgresTaskStore(new DatabaseConfig(URL, USER, PASSWORD));
+        store.prepare();
+        return store;
+    }
+
+    @Override
+    protected TaskStatus status(UUID uuid) throws Exception {
+        String status = column(uuid, "status::text");
+        return status == null ? null : TaskStatus.valueOf(status.toUpperCase());
+    }
+
+    @Override
+    protected boolean locked(UUID uuid) throws Exception {
+        return "true".equals(column(uuid, "locked::text"));
+    }
+
+    private static String column(UUID uuid, String column) throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD);
+             PreparedStatement stmt = connection.prepareStatement("SELECT " + column + " FROM taskconveyor.tc_tasks WHERE uuid = ?")) {
+            stmt.setObject(1, uuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
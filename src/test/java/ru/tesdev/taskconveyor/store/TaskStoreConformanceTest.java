@@ -0,0 +1,207 @@
+package ru.tesdev.taskconveyor.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.tesdev.taskconveyor.exceptions.TaskPayloadException;
+import ru.tesdev.taskconveyor.types.EnqueuedTask;
+import ru.tesdev.taskconveyor.types.NewTask;
+import ru.tesdev.taskconveyor.types.TaskStatus;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Semantics every TaskStore has to share with the PostgreSQL schema, run once per backend
+abstract class TaskStoreConformanceTest {
+    private static final long LEASE = 10_000;
+
+    protected TaskStore store;
+
+    // an empty, prepared store
+    protected abstract TaskStore createStore() throws Exception;
+
+    protected abstract TaskStatus status(UUID uuid) throws Exception;
+
+    protected abstract boolean locked(UUID uuid) throws Exception;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = createStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void claimsOldestFirstAndCountsAttempts() throws Exception {
+        List<EnqueuedTask> tasks = store.insert("h", List.of(
+                NewTask.of("x", Map.of("k", 1), "o"), NewTask.of("x", Map.of(), "o"), NewTask.of("y", Map.of(), "o")));
+        assertTrue(tasks.get(0).index() < tasks.get(1).index() && tasks.get(1).index() < tasks.get(2).index());
+
+        List<TaskStore.ClaimedTask> claimed = claim("h", 2);
+        assertEquals(2, claimed.size());
+        assertEquals(tasks.get(0).uuid(), claimed.get(0).uuid());
+        assertEquals(tasks.get(1).uuid(), claimed.get(1).uuid());
+        assertEquals("work", claimed.get(0).status());
+        assertEquals(1, claimed.get(0).attempts());
+        assertEquals("{\"k\":1}", claimed.get(0).payload().replace(" ", ""));
+        assertEquals(TaskStatus.WORK, status(tasks.get(0).uuid()));
+
+        assertEquals(1, claim("h", 5).size());
+        assertEquals(0, claim("h", 5).size());
+        assertEquals(0, claim("other", 5).size());
+    }
+
+    @Test
+    void claimFiltersTypesAndIncludesSharedTasks() throws Exception {
+        store.insert("h", List.of(NewTask.of("p", 0, "o"), NewTask.of("q", 0, "o"), NewTask.of("r", 0, "o").handlerName("*")));
+
+        List<TaskStore.ClaimedTask> claimed = new ArrayList<>();
+        store.claim(new TaskStore.ClaimRequest("h", true, List.of("q"), 5, "n1", LEASE), claimed::add);
+        assertEquals(List.of("q"), claimed.stream().map(TaskStore.ClaimedTask::type).toList());
+
+        claimed.clear();
+        store.claim(new TaskStore.ClaimRequest("h", false, List.of("p"), 5, "n1", LEASE), claimed::add);
+        assertEquals(List.of("r"), claimed.stream().map(TaskStore.ClaimedTask::type).toList());
+
+        assertEquals(List.of("p"), claim("h", 5).stream().map(TaskStore.ClaimedTask::type).toList());
+    }
+
+    @Test
+    void lockedTasksKeepTheirState() throws Exception {
+        List<EnqueuedTask> tasks = store.insert("h", List.of(NewTask.of("x", 0, "o"), NewTask.of("x", 0, "o")));
+        UUID first = tasks.get(0).uuid();
+        UUID second = tasks.get(1).uuid();
+        claim("h", 2);
+
+        store.transition(List.of(new TaskStore.Transition(first, TaskStatus.DONE, true)));
+        assertEquals(TaskStatus.DONE, status(first));
+        assertTrue(locked(first));
+
+        // guarded writes skip the locked task and still apply to the others
+        store.transition(List.of(new TaskStore.Transition(first, TaskStatus.DENY, true),
+                new TaskStore.Transition(second, TaskStatus.DENY, true)));
+        assertEquals(TaskStatus.DONE, status(first));
+        assertEquals(TaskStatus.DENY, status(second));
+        store.updateStatus(first, TaskStatus.NEW);
+        assertEquals(TaskStatus.DONE, status(first));
+
+        SQLException e = assertThrows(SQLException.class, () -> store.setLock(first, true));
+        assertTrue(e.getMessage().contains("Row locked"), e.getMessage());
+
+        store.setLock(first, false);
+        assertFalse(locked(first));
+        store.updateStatus(first, TaskStatus.NEW);
+        List<TaskStore.ClaimedTask> again = claim("h", 5);
+        assertEquals(1, again.size());
+        assertEquals(2, again.get(0).attempts());
+    }
+
+    @Test
+    void scheduledTasksWaitUntilDue() throws Exception {
+        UUID uuid = store.insert("h", List.of(NewTask.of("x", 0, "o"))).get(0).uuid();
+        claim("h", 1);
+        Instant runAt = Instant.now().plusMillis(500);
+        store.schedule(uuid, runAt);
+
+        assertEquals(TaskStatus.NEW, status(uuid));
+        assertEquals(0, claim("h", 5).size());
+        assertTrue(Math.abs(store.nextDue("h") - runAt.toEpochMilli()) < 5);
+
+        Thread.sleep(600);
+        List<TaskStore.ClaimedTask> due = claim("h", 5);
+        assertEquals(1, due.size());
+        assertEquals(uuid, due.get(0).uuid());
+        assertEquals(Long.MAX_VALUE, store.nextDue("h"));
+    }
+
+    @Test
+    void childrenCommitWithTheirParentOnce() throws Exception {
+        UUID parent = store.insert("h", List.of(NewTask.of("x", 0, "o"))).get(0).uuid();
+        claim("h", 1);
+
+        List<EnqueuedTask> children = store.complete(parent, TaskStatus.DONE, "h",
+                List.of(NewTask.of("c", 1, "o"), NewTask.of("c", 2, "o").handlerName("k")));
+        assertNotNull(children);
+        assertEquals(2, children.size());
+        assertEquals(TaskStatus.DONE, status(parent));
+        assertTrue(locked(parent));
+        assertEquals(TaskStatus.NEW, status(children.get(0).uuid()));
+
+        assertNull(store.complete(parent, TaskStatus.DONE, "h", List.of(NewTask.of("c", 3, "o"))));
+        assertEquals(1, claim("h", 5).size());
+        assertEquals(1, claim("k", 5).size());
+    }
+
+    @Test
+    void unserializableChildLeavesParentInWork() throws Exception {
+        UUID parent = store.insert("h", List.of(NewTask.of("x", 0, "o"))).get(0).uuid();
+        claim("h", 1);
+
+        assertThrows(TaskPayloadException.class,
+                () -> store.complete(parent, TaskStatus.DONE, "h", List.of(NewTask.of("c", new Object(), "o"))));
+        assertEquals(TaskStatus.WORK, status(parent));
+        assertFalse(locked(parent));
+    }
+
+    @Test
+    void expiredLeasesAreReclaimed() throws Exception {
+        List<EnqueuedTask> tasks = store.insert("h", List.of(NewTask.of("x", 0, "o"), NewTask.of("x", 0, "o")));
+        store.claim(new TaskStore.ClaimRequest("h", false, List.of(), 5, "n1", 200), task -> { });
+        Thread.sleep(100);
+
+        assertEquals(1, store.renewLeases("n1", new Integer[]{tasks.get(0).index()}, 1_000));
+        assertEquals(0, store.renewLeases("n2", new Integer[]{tasks.get(1).index()}, 1_000));
+        Thread.sleep(200);
+
+        assertEquals(1, store.reclaimExpired("h", 100));
+        assertEquals(TaskStatus.WORK, status(tasks.get(0).uuid()));
+        assertEquals(TaskStatus.NEW, status(tasks.get(1).uuid()));
+    }
+
+    @Test
+    void purgeRemovesOnlyFinishedTasks() throws Exception {
+        List<EnqueuedTask> tasks = store.insert("h", List.of(NewTask.of("x", 0, "o"), NewTask.of("x", 0, "o"), NewTask.of("x", 0, "o")));
+        claim("h", 2);
+        store.transition(List.of(new TaskStore.Transition(tasks.get(0).uuid(), TaskStatus.DONE, true),
+                new TaskStore.Transition(tasks.get(1).uuid(), TaskStatus.DENY, true)));
+
+        assertEquals(0, store.purgeFinished(Instant.now().minusSeconds(60), 10));
+        assertEquals(2, store.purgeFinished(Instant.now().plusSeconds(1), 10));
+        assertNull(status(tasks.get(0).uuid()));
+        assertNull(status(tasks.get(1).uuid()));
+        assertEquals(TaskStatus.NEW, status(tasks.get(2).uuid()));
+    }
+
+    @Test
+    void insertsWakeListeners() throws Exception {
+        try (TaskStore.WakeSignal signal = store.listen(List.of("w", "*"))) {
+            assertFalse(signal.await(200));
+            Thread inserter = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    store.insert("w", List.of(NewTask.of("x", 0, "o")));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            inserter.start();
+            assertTrue(signal.await(3_000));
+            inserter.join();
+        }
+    }
+
+    private List<TaskStore.ClaimedTask> claim(String handlerName, int limit) throws SQLException {
+        List<TaskStore.ClaimedTask> claimed = new ArrayList<>();
+        store.claim(new TaskStore.ClaimRequest(handlerName, false, List.of(), limit, "n1", LEASE), claimed::add);
+        return claimed;
+    }
+}
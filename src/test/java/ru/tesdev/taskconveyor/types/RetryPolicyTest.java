@@ -0,0 +1,33 @@
+package ru.tesdev.taskconveyor.types;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+    @Test
+    void defaultsGiveUpAfterTheDefaultAttempts() {
+        RetryPolicy policy = RetryPolicy.defaults();
+        assertFalse(policy.exhausted(RetryPolicy.DEFAULT_MAX_ATTEMPTS - 1));
+        assertTrue(policy.exhausted(RetryPolicy.DEFAULT_MAX_ATTEMPTS));
+        assertTrue(RetryPolicy.exponential(Duration.ofSeconds(1), Duration.ofMinutes(1)).exhausted(RetryPolicy.DEFAULT_MAX_ATTEMPTS));
+    }
+
+    @Test
+    void maxAttemptsCountsTheFirstExecution() {
+        RetryPolicy policy = RetryPolicy.fixed(Duration.ZERO).maxAttempts(3);
+        assertFalse(policy.exhausted(2));
+        assertTrue(policy.exhausted(3));
+        assertThrows(IllegalArgumentException.class, () -> policy.maxAttempts(0));
+    }
+
+    @Test
+    void delaysGrowUpToTheMaximum() {
+        RetryPolicy policy = RetryPolicy.exponential(Duration.ofMillis(100), Duration.ofMillis(300)).jitter(0);
+        assertEquals(Duration.ofMillis(100), policy.delayFor(1));
+        assertEquals(Duration.ofMillis(200), policy.delayFor(2));
+        assertEquals(Duration.ofMillis(300), policy.delayFor(3));
+    }
+}